@@ -9,4 +9,5 @@ repositories {
 
 dependencies {
     implementation(libs.plugins.nexus)
+    implementation(libs.plugins.jmh)
 }
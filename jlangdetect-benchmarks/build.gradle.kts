@@ -0,0 +1,24 @@
+plugins {
+    java
+    id("me.champeau.jmh")
+}
+
+description = "JLangDetect benchmarks"
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(8))
+    }
+}
+
+dependencies {
+    jmhImplementation(project(":jlangdetect-europarl"))
+    jmhImplementation(project(":jlangdetect-extra"))
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    // reports the allocation rate along with the throughput
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld.benchmarks;
+
+import me.champeau.ld.AbstractGramTree;
+import me.champeau.ld.GramTreeBuilder;
+import me.champeau.ld.HashGramTreeBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Learns a text and builds its profile, with both builders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LearningBenchmark {
+    @Param({"MEDIUM", "LONG", "CJK"})
+    public Sample sample;
+
+    @Benchmark
+    public AbstractGramTree learnAndBuild() {
+        GramTreeBuilder builder = new GramTreeBuilder(1, 3);
+        builder.setTruncationThreshold(0.1d);
+        builder.learn(sample.getText());
+        return builder.build();
+    }
+
+    @Benchmark
+    public AbstractGramTree learnAndBuildHashed() {
+        HashGramTreeBuilder builder = new HashGramTreeBuilder(1, 3);
+        builder.setTruncationThreshold(0.1d);
+        builder.learn(sample.getText());
+        return builder.build();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld.benchmarks;
+
+import me.champeau.ld.AbstractGramTree;
+import me.champeau.ld.EuroparlDetector;
+import me.champeau.ld.LangDetector;
+import me.champeau.ld.ProfileFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the profiles of the {@link EuroparlDetector}, which is what an application pays on its first detection.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfileLoadingBenchmark {
+
+    @Benchmark
+    public AbstractGramTree loadProfile() throws IOException {
+        try (InputStream in = ProfileLoadingBenchmark.class.getClassLoader().getResourceAsStream("europarl-ld/fr_tree.bin")) {
+            return ProfileFormat.load(in);
+        }
+    }
+
+    @Benchmark
+    public LangDetector loadEuroparlDetector() {
+        // the singleton only loads its profiles once, so a new detector is created each time
+        LangDetector detector = new EuroparlDetector() {
+        };
+        detector.warmUp();
+        return detector;
+    }
+}
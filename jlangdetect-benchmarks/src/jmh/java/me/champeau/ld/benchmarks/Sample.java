@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld.benchmarks;
+
+/**
+ * The texts the benchmarks are run on, from a few words to several kilobytes, latin and CJK.
+ */
+public enum Sample {
+    SHORT("ceci est un petit texte en français"),
+    MEDIUM("Une première optimisation consiste à ne tester que les sous-chaînes de taille compatibles avec le "
+            + "lexique. Le détecteur découpe le texte en n-grammes, puis recherche chacun d'eux dans le profil de "
+            + "chaque langue, et retient la langue dont le profil obtient le meilleur score."),
+    LONG(repeat(MEDIUM.text + " The little cat is on the carpet, and the dog sleeps in the house. ", 40)),
+    CJK(repeat("马兜铃猪笼草是苏门答腊特有的热带食虫植物，其种加词“类似于马兜铃”，指该猪笼草捕虫笼的形状和颜色都非常近似于马兜铃的花朵。", 4));
+
+    private final String text;
+
+    Sample(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder sb = new StringBuilder(text.length() * count);
+        for (int i = 0; i < count; i++) {
+            sb.append(text);
+        }
+        return sb.toString();
+    }
+}
@@ -7,13 +7,6 @@ package me.champeau.ld;
  */
 
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.io.BufferedInputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-
 /**
  * An extension of the language detector which automatically loads europarl resources from classpath, thus supports
  * detecting the language of documents in the following languages :
@@ -48,7 +41,6 @@ import java.io.ObjectInputStream;
  * @author Cedric Champeau
  */
 public class EuroparlDetector extends LangDetector {
-    private final static Logger theLogger = LoggerFactory.getLogger(EuroparlDetector.class);
 
     private final static String[] EUROPARL_LANGUAGES = {
             "bg",
@@ -77,30 +69,19 @@ public class EuroparlDetector extends LangDetector {
     private final static EuroparlDetector INSTANCE = new EuroparlDetector();
 
     protected EuroparlDetector() {
-        super();
+        super(europarlProfiles());
+    }
+
+    private static Builder europarlProfiles() {
+        Builder builder = builder();
         ClassLoader loader = EuroparlDetector.class.getClassLoader();
         for (String lang : EUROPARL_LANGUAGES) {
-            try {
-                register(lang, new ObjectInputStream(new BufferedInputStream(loader.getResourceAsStream("europarl-ld/" +lang+"_tree.bin"))));
-            } catch (IOException e) {
-                theLogger.warn("Unable to read Europarl resources for language "+lang);
-            }
+            builder.register(lang, new ResourceProfileLoader(loader, "europarl-ld/" +lang+"_tree.bin"));
         }
+        return builder;
     }
 
     public static EuroparlDetector getInstance() {
         return INSTANCE;
     }
-
-    @Override
-    public void register(final String lang, final AbstractGramTree tree) {
-        if (INSTANCE!=null) throw new IllegalStateException("Cannot add languages to Europarl detector once loaded");
-        super.register(lang, tree);
-    }
-
-    @Override
-    public void register(final String lang, final ObjectInputStream in) {
-        if (INSTANCE!=null) throw new IllegalStateException("Cannot add languages to Europarl detector once loaded");
-        super.register(lang, in);
-    }
 }
@@ -19,16 +19,12 @@
 
 package me.champeau.ld.learn.util;
 
-import me.champeau.ld.AbstractGramTree;
-import me.champeau.ld.GramTreeBuilder;
+import me.champeau.ld.CompiledGramTree;
 import me.champeau.ld.LangDetector;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.util.concurrent.*;
-import java.util.List;
-import java.util.LinkedList;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.util.Map;
 
 /**
@@ -41,101 +37,55 @@ import java.util.Map;
  *
  */
 public class EuroparlLoader {
-    private final static Logger theLogger = LoggerFactory.getLogger(EuroparlLoader.class);
-
 	/**
-	 * Reads a single EPPPC file, strips XML lines and returns a single string containing raw text.
-	 * @param aFile a EPPPC text file, encoded in UTF-8.
-	 * @return raw text
+	 * Creates the learning of the languages. Each language is learnt by as many threads as there are processors, see
+	 * {@link ShardedLearning}.
+	 * @return the learning, to be configured
 	 */
-	private static String readSingleFile(File aFile) {
-		StringBuilder sb = new StringBuilder();
-		try {
-			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(aFile), "UTF-8"));
-			String line;
-			while ((line = reader.readLine()) != null) {
-				if (!line.startsWith("<")) {
-					sb.append(line).append('\n');
+	private static ShardedLearning newLearning() {
+		return new ShardedLearning(1, 3) {
+			private final ThreadLocal<CorpusReader> readers = new ThreadLocal<CorpusReader>() {
+				@Override
+				protected CorpusReader initialValue() {
+					return new CorpusReader(Charset.forName("UTF-8"), CorpusReader.SKIP_XML_LINES);
 				}
+			};
+
+			@Override
+			protected double getTruncationThreshold(String lang) {
+				return 0.1d;
 			}
-			reader.close();
-		} catch (IOException e) {
-			theLogger.error("Unable to read file : " + aFile);
-			return null;
-		}
-		return sb.toString();
-	}
 
-	/**
-	 * Returns a map (lang code -> gram tree) of gram trees
-	 * @param srcDir source directory where to find language specific directories
-	 * @param dstDir output directory for compiled n-grams trees
-	 * @param langs list of languages to be compiled
-	 * @return the map of trees
-	 */
-	private static Map<String,AbstractGramTree> readCorpus(final File srcDir, final File dstDir, String[] langs) {
-		int threads = Runtime.getRuntime().availableProcessors();
-		ExecutorService service = Executors.newFixedThreadPool(threads);
-		theLogger.info("Parallel processing of "+threads+" languages over "+langs.length+"...");
-		List<Future<?>> tasks = new LinkedList<Future<?>>();
-		final Map<String,AbstractGramTree> trees = new ConcurrentHashMap<String, AbstractGramTree>();
-		for (final String lang : langs) {
-			tasks.add(service.submit(new Runnable() {
-				public void run() {
-					theLogger.info("Processing directory " + lang);
-					GramTreeBuilder tree = new GramTreeBuilder(1, 3);
-                    tree.setTruncationThreshold(0.1d);
-					File sourceFiles = new File(srcDir, lang);
-					File[] files = sourceFiles.listFiles();
-					int cpt = 0;
-					for (File file : files) {
-						tree.learn(readSingleFile(file));
-						cpt++;
-						if (cpt % 20 == 0) {
-							theLogger.info("Processed " + (100 * cpt / files.length) + "% of " + lang);
-						}
-					}
-                    final AbstractGramTree build = tree.build();
-                    trees.put(lang, build);
-					theLogger.info("Saving tree : "+lang);
-					File dst = new File(dstDir, lang+"_tree.bin");
-					try {
-						ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(dst)));
-						out.writeObject(build);
-						out.close();
-					} catch (IOException e) {
-						theLogger.error("Unable to write lang tree "+lang,e);
-					}
-					theLogger.info("Lang "+ lang+" complete !");
-				}
-			}));
-		}
-		// passive wait
-		for (Future<?> task : tasks) {
-			try {
-				task.get();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			} catch (ExecutionException e) {
-				e.printStackTrace();
+			@Override
+			protected void learn(Shard shard, File file) throws IOException {
+				// the filtered file is learnt as a single text, n-grams spanning two lines included
+				Writer text = shard.newTextWriter();
+				readers.get().read(file, text);
+				text.close();
 			}
-		}
-		service.shutdown();
-		return trees;
+		};
 	}
 
 	public static void main(String[] args) {
-		if (args.length != 2) {
-			System.out.println("Usage : java " + EuroparlLoader.class.getCanonicalName() + " <sourcedir> <destdir>");
+		ShardedLearning learning = newLearning();
+		int first;
+		try {
+			first = learning.parseOptions(args);
+		} catch (IllegalArgumentException e) {
+			first = -1;
+		}
+		if (first < 0 || (args.length - first != 2 && args.length - first != 3)) {
+			System.out.println("Usage : java " + EuroparlLoader.class.getCanonicalName() + " [--hash] [--memory-budget <megabytes>] [--max-nodes <count>] [--max-size <kilobytes>] <sourcedir> <destdir> [countsdir]");
 			System.exit(-1);
 		}
-		File srcDir = new File(args[0]);
-		File dstDir = new File(args[1]);
+		File srcDir = new File(args[first]);
+		File dstDir = new File(args[first + 1]);
 		dstDir.mkdirs();
 		final String[] langs = srcDir.list();
 		LangDetector detector = new LangDetector();
-		Map<String,AbstractGramTree> trees = readCorpus(srcDir, dstDir, langs);
-		for (Map.Entry<String, AbstractGramTree> entry : trees.entrySet()) {
+		learning.setCountsDirectory(args.length - first == 3 ? new File(args[first + 2]) : null);
+		Map<String,CompiledGramTree> trees = learning.readCorpus(srcDir, dstDir, langs, Runtime.getRuntime().availableProcessors());
+		for (Map.Entry<String, CompiledGramTree> entry : trees.entrySet()) {
 			detector.register(entry.getKey(), entry.getValue());
 		}
 	}
@@ -20,15 +20,40 @@
 package com.champeau.ld;
 
 import me.champeau.ld.AbstractGramTree;
+import me.champeau.ld.CachingLangDetector;
+import me.champeau.ld.DetectionMetrics;
+import me.champeau.ld.DetectionResult;
+import me.champeau.ld.EarlyTermination;
 import me.champeau.ld.EuroparlDetector;
+import me.champeau.ld.GramTreeBuilder;
 import me.champeau.ld.LangDetector;
+import me.champeau.ld.LanguageMask;
+import me.champeau.ld.LanguageScores;
+import me.champeau.ld.LanguageSpan;
+import me.champeau.ld.ProfileLoader;
+import me.champeau.ld.Sampling;
+import me.champeau.ld.Segmentation;
+import me.champeau.ld.SwappableLangDetector;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 /**
  * User: cedric
  * Date: 21 sept. 2008
@@ -101,6 +126,279 @@ public class TestLangDetection {
         }
     }
 
+    @Test
+    public void shouldScoreLikeEachLanguageTree() {
+        Map<String, AbstractGramTree> trees = new HashMap<String, AbstractGramTree>();
+        GramTreeBuilder fr = new GramTreeBuilder(1, 3);
+        fr.learn("le petit chat est sur le tapis, et le chien dort dans la maison");
+        trees.put("fr", fr.build());
+        GramTreeBuilder en = new GramTreeBuilder(1, 3);
+        en.learn("the little cat is on the carpet, and the dog sleeps in the house");
+        trees.put("en", en.build());
+        GramTreeBuilder de = new GramTreeBuilder(2, 4);
+        de.learn("die kleine Katze ist auf dem Teppich, und der Hund schläft im Haus");
+        trees.put("de", de.build());
+        LangDetector detector = new LangDetector();
+        for (Map.Entry<String, AbstractGramTree> entry : trees.entrySet()) {
+            detector.register(entry.getKey(), entry.getValue());
+        }
+        for (String text : new String[] {"", "a", "le", "the", "der Hund", "le chat dort", "the dog sleeps"}) {
+            for (LangDetector.Score score : detector.scoreLanguages(text)) {
+                assertEquals(score.getScore(), trees.get(score.getLanguage()).scoreText(text), 1e-9);
+            }
+        }
+        assertEquals(detector.detectLang("le chat dort"), "fr");
+    }
+
+    @Test
+    public void shouldLoadProfilesOnDemand() {
+        final Map<String, String> corpora = new HashMap<String, String>();
+        corpora.put("fr", "le petit chat est sur le tapis, et le chien dort dans la maison");
+        corpora.put("en", "the little cat is on the carpet, and the dog sleeps in the house");
+        final Map<String, Integer> loads = new HashMap<String, Integer>();
+        LangDetector detector = new LangDetector();
+        for (final String lang : corpora.keySet()) {
+            loads.put(lang, 0);
+            detector.register(lang, new ProfileLoader() {
+                public AbstractGramTree load() {
+                    loads.put(lang, loads.get(lang) + 1);
+                    GramTreeBuilder builder = new GramTreeBuilder(2, 4);
+                    builder.learn(corpora.get(lang));
+                    return builder.build();
+                }
+            });
+        }
+        assertEquals(detector.getLanguages().size(), 2);
+        assertEquals((int) loads.get("fr"), 0);
+        assertEquals(detector.detectLang("le chat dort", Collections.singleton("fr")), "fr");
+        assertEquals((int) loads.get("fr"), 1);
+        assertEquals((int) loads.get("en"), 0);
+        // languages left out of a mask stay pending
+        assertEquals(detector.detectLang("le chat dort", LanguageMask.of("fr")), "fr");
+        assertEquals((int) loads.get("en"), 0);
+        detector.warmUp();
+        assertEquals(detector.detectLang("the dog sleeps"), "en");
+        assertEquals(detector.detectLang("le chat dort"), "fr");
+        assertEquals((int) loads.get("fr"), 1);
+        assertEquals((int) loads.get("en"), 1);
+    }
+
+    @Test
+    public void shouldSwapImmutableDetectors() {
+        GramTreeBuilder fr = new GramTreeBuilder(2, 4);
+        fr.learn("le petit chat est sur le tapis, et le chien dort dans la maison");
+        GramTreeBuilder en = new GramTreeBuilder(2, 4);
+        en.learn("the little cat is on the carpet, and the dog sleeps in the house");
+        LangDetector.Builder builder = LangDetector.builder().register("fr", fr.build());
+        LangDetector french = builder.build();
+        LangDetector bilingual = builder.register("en", en.build()).build();
+        assertEquals(french.getLanguages(), Collections.singleton("fr"));
+        assertEquals(bilingual.getLanguages().size(), 2);
+        SwappableLangDetector detector = new SwappableLangDetector(french);
+        assertEquals(detector.detectLang("the dog sleeps"), "fr");
+        detector.swap(bilingual);
+        assertEquals(detector.detectLang("the dog sleeps"), "en");
+        try {
+            bilingual.register("de", new GramTreeBuilder(2, 4).build());
+            fail("Built detectors should be immutable");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldDetectBatchesInOrder() {
+        LangDetector detector = EuroparlDetector.getInstance();
+        String[] samples = {"un texte en français", "a text in english", "un texto en español", "ein Text auf Deutsch", ""};
+        List<String> texts = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            texts.add(samples[i % samples.length]);
+        }
+        List<String> languages = detector.detectLangs(texts, detector.getLanguages(), new ForkJoinPool(4));
+        assertEquals(languages.size(), texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(languages.get(i), detector.detectLang(texts.get(i)));
+        }
+    }
+
+    @Test
+    public void shouldStopReadingOnceConfident() {
+        LangDetector detector = EuroparlDetector.getInstance();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            text.append("La Commission a présenté une proposition visant à renforcer la coopération entre les États membres. ");
+        }
+        DetectionResult result = detector.detectLang(text, detector.getLanguages(), EarlyTermination.DEFAULT);
+        assertEquals(result.getLanguage(), "fr");
+        assertTrue(result.getConsumed() < text.length());
+        DetectionResult complete = detector.detectLang("un texte en français", detector.getLanguages(), EarlyTermination.DEFAULT);
+        assertTrue(complete.isComplete());
+        assertEquals(complete.getScore(), detector.scoreLanguages("un texte en français").iterator().next().getScore(), 1e-9);
+    }
+
+    @Test
+    public void shouldDetectStreamedTexts() throws IOException {
+        LangDetector detector = EuroparlDetector.getInstance();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("Die Kommission hat einen Vorschlag zur Stärkung der Zusammenarbeit vorgelegt. ");
+        }
+        for (String sample : new String[] {"", "ab", "der Hund", text.toString()}) {
+            Collection<LangDetector.Score> scores = detector.scoreLanguages(sample);
+            double best = scores.iterator().next().getScore();
+            DetectionResult read = detector.detectLang(new StringReader(sample), detector.getLanguages(), Long.MAX_VALUE);
+            assertEquals(read.getLanguage(), detector.detectLang(sample));
+            assertEquals(read.getScore(), best, 1e-9 * best);
+            assertEquals(read.getConsumed(), sample.length());
+            DetectionResult decoded = detector.detectLang(Channels.newChannel(new ByteArrayInputStream(sample.getBytes("UTF-8"))),
+                    Charset.forName("UTF-8"), detector.getLanguages(), Long.MAX_VALUE);
+            assertEquals(decoded.getLanguage(), detector.detectLang(sample));
+            assertEquals(decoded.getScore(), best, 1e-9 * best);
+            assertTrue(decoded.isComplete());
+        }
+        DetectionResult truncated = detector.detectLang(new StringReader(text.toString()), detector.getLanguages(), 100);
+        assertEquals(truncated.getLanguage(), "de");
+        assertEquals(truncated.getConsumed(), 100);
+        assertEquals(truncated.getLength(), -1);
+    }
+
+    @Test
+    public void shouldSampleLongTexts() {
+        LangDetector detector = EuroparlDetector.getInstance();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("De Commissie heeft een voorstel gepresenteerd om de samenwerking te versterken. ");
+        }
+        Sampling sampling = new Sampling(128, 1024, 42);
+        DetectionResult result = detector.detectLang(text, detector.getLanguages(), sampling);
+        assertEquals(result.getLanguage(), "nl");
+        assertEquals(result.getConsumed(), 1024);
+        assertEquals(detector.detectLang(text, detector.getLanguages(), sampling).getScore(), result.getScore());
+        DetectionResult small = detector.detectLang("een voorstel", detector.getLanguages(), sampling);
+        assertTrue(small.isComplete());
+    }
+
+    @Test
+    public void shouldSplitMixedLanguageTexts() {
+        LangDetector detector = EuroparlDetector.getInstance();
+        String fr = "La Commission européenne a présenté aujourd'hui une proposition visant à renforcer la coopération entre les États membres dans le domaine de la sécurité alimentaire. ";
+        String en = "The European Commission today presented a proposal to strengthen cooperation between Member States in the field of food safety. ";
+        String text = fr + en + fr;
+        List<LanguageSpan> spans = detector.detectSegments(text, detector.getLanguages(), Segmentation.DEFAULT);
+        assertEquals(spans.size(), 3);
+        assertEquals(spans.get(0).getLanguage(), "fr");
+        assertEquals(spans.get(1).getLanguage(), "en");
+        assertEquals(spans.get(2).getLanguage(), "fr");
+        assertEquals(spans.get(0).getStart(), 0);
+        assertEquals(spans.get(2).getEnd(), text.length());
+        assertTrue(Math.abs(spans.get(1).getStart() - fr.length()) < 16);
+    }
+
+    @Test
+    public void shouldRecordDetectionMetrics() {
+        LangDetector detector = LangDetector.builder().registerAll(EuroparlDetector.getInstance()).build();
+        DetectionMetrics metrics = new DetectionMetrics();
+        detector.setDetectionListener(metrics);
+        String text = "ceci est un petit texte en français";
+        assertEquals(detector.detectLang(text), "fr");
+        assertNull(detector.detectLang(""));
+        assertEquals(detector.detectLangs(Arrays.asList("this is a text in english", text)), Arrays.asList("en", "fr"));
+        assertEquals(metrics.getDetectionCount(), 4);
+        assertEquals(metrics.getNullResultRate(), 0.25);
+        assertEquals(metrics.getCharactersScored(), 2 * text.length() + "this is a text in english".length());
+        assertEquals(metrics.getDetectionsPerLanguage().get("fr"), Long.valueOf(2));
+        assertEquals(metrics.getDetectionsPerLanguage().get("en"), Long.valueOf(1));
+        double hitRate = metrics.getHitRatePerLanguage().get("fr");
+        assertTrue(hitRate > metrics.getHitRatePerLanguage().get("fi") && hitRate <= 1, "hit rate " + hitRate);
+        assertTrue(metrics.getMedianLatencyNanos() > 0);
+        assertTrue(metrics.getLatency99thPercentileNanos() >= metrics.getMedianLatencyNanos());
+        metrics.reset();
+        detector.setDetectionListener(null);
+        detector.detectLang(text);
+        assertEquals(metrics.getDetectionCount(), 0);
+    }
+
+    @Test
+    public void shouldCacheRecentResults() {
+        CachingLangDetector detector = new CachingLangDetector(EuroparlDetector.getInstance(), 1024);
+        String french = "ceci est un petit texte en français";
+        String english = "this is a text in english";
+        assertEquals(detector.detectLang(french), "fr");
+        assertEquals(detector.detectLang(new StringBuilder(french)), "fr");
+        assertNull(detector.detectLang(""));
+        assertNull(detector.detectLang(""));
+        assertEquals(detector.getHitCount(), 2);
+        assertEquals(detector.getMissCount(), 2);
+        // the restrictions are part of the key
+        assertEquals(detector.detectLang(french, Collections.singleton("en")), "en");
+        assertEquals(detector.getMissCount(), 3);
+        assertEquals(detector.getSize(), 3);
+        assertEquals(detector.detectLangs(Arrays.asList(english, french, english)), Arrays.asList("en", "fr", "en"));
+        assertEquals(detector.getHitCount(), 3);
+        assertEquals(detector.detectLang(english), "en");
+        assertEquals(detector.getHitCount(), 4);
+        assertEquals(detector.getEvictionCount(), 0);
+        // a cache of a single result, which stripes cannot spread
+        CachingLangDetector single = new CachingLangDetector(EuroparlDetector.getInstance(), 1);
+        assertEquals(single.detectLang(french), "fr");
+        assertEquals(single.detectLang(english), "en");
+        assertEquals(single.getEvictionCount(), 1);
+        assertEquals(single.getSize(), 1);
+        assertEquals(single.detectLang(french), "fr");
+        assertEquals(single.getHitCount(), 0);
+    }
+
+    @Test
+    public void shouldRankTopLanguagesInReusedHolder() {
+        EuroparlDetector detector = EuroparlDetector.getInstance();
+        LanguageScores holder = new LanguageScores();
+        for (String text : new String[] {"ceci est un petit texte en français", "this is a text in english", ""}) {
+            List<LangDetector.Score> expected = new ArrayList<LangDetector.Score>(detector.scoreLanguages(text));
+            detector.scoreLanguages(text, detector.getLanguages(), holder);
+            assertEquals(holder.size(), expected.size());
+            assertEquals(holder.top(3), 3);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(holder.getTopLanguage(i), expected.get(i).getLanguage());
+                assertEquals(holder.getTopScore(i), expected.get(i).getScore());
+            }
+        }
+        detector.scoreLanguages("ceci est un petit texte en français", Collections.singleton("fr"), holder);
+        assertEquals(holder.size(), 1);
+        assertEquals(holder.top(3), 1);
+        assertEquals(holder.getTopLanguage(0), "fr");
+        assertEquals(holder.getTopScore(0), holder.getScore(0));
+    }
+
+    @Test
+    public void shouldRestrictLanguagesWithMasks() {
+        EuroparlDetector detector = EuroparlDetector.getInstance();
+        String french = "ceci est un petit texte en français";
+        LanguageMask english = LanguageMask.of("en");
+        assertEquals(detector.detectLang(french, english), "en");
+        assertEquals(detector.detectLang(french, LanguageMask.of(detector.getLanguages())), "fr");
+        assertNull(detector.detectLang(french, LanguageMask.of()));
+        LanguageScores holder = new LanguageScores();
+        LanguageScores expected = new LanguageScores();
+        LanguageMask restrictions = LanguageMask.of("de", "fr", "it");
+        detector.scoreLanguages(french, restrictions, holder);
+        detector.scoreLanguages(french, restrictions.toLanguages(), expected);
+        assertEquals(holder.size(), 3);
+        assertEquals(holder.top(3), 3);
+        assertEquals(expected.top(3), 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(holder.getTopLanguage(i), expected.getTopLanguage(i));
+            assertEquals(holder.getTopScore(i), expected.getTopScore(i));
+        }
+        CachingLangDetector cache = new CachingLangDetector(detector, 16);
+        assertEquals(cache.detectLang(french, english), "en");
+        assertEquals(cache.detectLang(french, LanguageMask.of("en")), "en");
+        assertEquals(cache.getHitCount(), 1);
+        // a set of the same languages is the same key
+        assertEquals(cache.detectLang(french, Collections.singleton("en")), "en");
+        assertEquals(cache.getHitCount(), 2);
+        assertEquals(cache.getMissCount(), 1);
+    }
+
     @Test(expectedExceptions = IllegalStateException.class)
     public void shouldFailRegisteringLanguage() {
         EuroparlDetector.getInstance().register("lang", new AbstractGramTree(0,0,0) {});
@@ -24,13 +24,6 @@ package me.champeau.ld;
  */
 
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.io.BufferedInputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-
 /**
  * A language detector which includes the {@link EuroparlDetector Europarl detection resources} plus extra languages :
  * <ul>
@@ -48,38 +41,24 @@ import java.io.ObjectInputStream;
  * 
  */
 public class UberLanguageDetector extends LangDetector {
-    private final static Logger theLogger = LoggerFactory.getLogger(UberLanguageDetector.class);
-
     public final static String[] EXTRA_LANGUAGES = {"ru","zh","ja","ko"};
     private final static UberLanguageDetector INSTANCE = new UberLanguageDetector();
 
 
     protected UberLanguageDetector() {
-        super(EuroparlDetector.getInstance());
+        super(uberProfiles());
+    }
+
+    private static Builder uberProfiles() {
+        Builder builder = builder().registerAll(EuroparlDetector.getInstance());
         ClassLoader loader = EuroparlDetector.class.getClassLoader();
         for (String lang : EXTRA_LANGUAGES) {
-            try {
-                register(lang, new ObjectInputStream(new BufferedInputStream(loader.getResourceAsStream("jlangdetect-extra/" + lang + "_tree.bin"))));
-            } catch (IOException e) {
-                theLogger.warn("Unable to read Europarl resources for language " + lang);
-            }
+            builder.register(lang, new ResourceProfileLoader(loader, "jlangdetect-extra/" + lang + "_tree.bin"));
         }
+        return builder;
     }
 
     public static UberLanguageDetector getInstance() {
         return INSTANCE;
     }
-
-    @Override
-    public void register(final String lang, final AbstractGramTree tree) {
-        if (INSTANCE!=null) throw new IllegalStateException("Cannot add languages to Europarl detector once loaded");
-        super.register(lang, tree);
-    }
-
-    @Override
-    public void register(final String lang, final ObjectInputStream in) {
-        if (INSTANCE!=null) throw new IllegalStateException("Cannot add languages to Europarl detector once loaded");
-        super.register(lang, in);
-    }
-
 }
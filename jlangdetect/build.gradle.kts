@@ -6,4 +6,5 @@ description = "Java Language Detector"
 
 dependencies {
     implementation(libs.slf4j)
+    testImplementation(libs.testng)
 }
\ No newline at end of file
@@ -60,47 +60,150 @@ private final static Logger theLogger = LoggerFactory.getLogger(AbstractGramTree
      * @return a score
      */
     public double scoreText(CharSequence text) {
-        NGramTokenizer tokenizer = new NGramTokenizer(text, min, max);
-        double tot = 0;
-        for (CharSequence charSequence : tokenizer) {
-            double s = scoreGram(charSequence);
-            if (theLogger.isDebugEnabled()) {
-                theLogger.debug(charSequence + " scores " + s);
-            }
-            tot += s;
-        }
-        double score = tot / Math.log(gramcount);
+        final int length = text.length();
+        double score = scorePositions(text, 0, length, NGramIterator.maxWindow(length, min, max));
         if (theLogger.isDebugEnabled()) {
-            theLogger.debug(text + ", total " + tot + "/" + Math.log(gramcount) + "=" + score);
+            theLogger.debug(text + ", score " + score);
         }
         return score;
     }
 
-    private double scoreGram(CharSequence gram) {
+    /**
+     * Scores the n-grams starting between the provided positions of a text. Scoring all the positions of a text, in
+     * any number of calls, gives the score returned by {@link #scoreText(CharSequence)}, so that a text can be scored
+     * incrementally.
+     *
+     * @param text      the text, or a window of it which includes the n-grams starting at the scored positions
+     * @param from      the first position to be scored, inclusive
+     * @param to        the last position to be scored, exclusive
+     * @param maxWindow size of the longest n-gram to be scored, computed from the length of the whole text by
+     *                  {@link NGramIterator#maxWindow(int, int, int)}
+     * @return the score of the n-grams
+     */
+    double scorePositions(CharSequence text, int from, int to, int maxWindow) {
+        final int length = text.length();
+        double tot = 0;
+        if (maxWindow >= min) {
+            for (int pos = from; pos < to; pos++) {
+                tot += scoreGrams(text, pos, Math.min(maxWindow, length - pos));
+            }
+        }
+        return tot / Math.log(gramcount);
+    }
+
+    /**
+     * Scores all the n-grams starting at the given offset, from the minimal size up to the provided one. As the
+     * n-grams share the same prefix, a single descent from the root scores all of them.
+     *
+     * @param text      the text
+     * @param from      offset of the first character of the n-grams
+     * @param maxWindow size of the longest n-gram to be scored
+     * @return the sum of the scores of the n-grams
+     */
+    private double scoreGrams(CharSequence text, int from, int maxWindow) {
         AbstractNode cur = root;
-        for (int i=0; i<gram.length();i++) {
-            char c = gram.charAt(i);
-            AbstractNode next = cur.getChild(c);
-            if (next==null) return 0;
-            cur = next;
+        double tot = 0;
+        for (int window = 1; window <= maxWindow; window++) {
+            cur = cur.getChild(text.charAt(from + window - 1));
+            if (cur == null) break;
+            if (window >= min) {
+                double s = Math.log(cur.freq);
+                if (theLogger.isDebugEnabled()) {
+                    theLogger.debug(text.subSequence(from, from + window) + " scores " + s);
+                }
+                tot += s;
+            }
         }
-        return Math.log(cur.freq);
+        return tot;
+    }
+
+    /**
+     * Tells if the n-grams of this tree can be merged into a {@link MultiGramTree}, that is to say if the tree
+     * exposes its nodes and will not change anymore.
+     *
+     * @return true if this tree can be merged with other language profiles
+     */
+    boolean canMerge() {
+        return root != null;
+    }
+
+    /**
+     * Walks every node of this tree, in lexical order, and reports the n-gram it represents along with its score, that
+     * is to say the logarithm of its frequency normalized by the logarithm of the total number of n-grams.
+     *
+     * @param visitor the visitor to be notified of each n-gram
+     */
+    void visitGrams(GramVisitor visitor) {
+        if (root != null) visitGrams(root, new char[max], 0, Math.log(gramcount), visitor);
+    }
+
+    private static void visitGrams(AbstractNode node, char[] gram, int depth, double norm, GramVisitor visitor) {
+        if (node.children == null) return;
+        for (AbstractNode child : node.children) {
+            if (child == null) break;
+            gram[depth] = child.c;
+            visitor.visit(gram, depth + 1, (float) (Math.log(child.freq) / norm));
+            visitGrams(child, gram, depth + 1, norm, visitor);
+        }
+    }
+
+    /**
+     * Callback used to enumerate the n-grams of a tree.
+     */
+    interface GramVisitor {
+        /**
+         * @param gram   a buffer whose first <i>length</i> characters are the n-gram
+         * @param length the length of the n-gram
+         * @param score  the normalized score of the n-gram
+         */
+        void visit(char[] gram, int length, float score);
     }
 
     /**
      * Base class for an n-gram tree node.
      */
     protected static abstract class AbstractNode implements Serializable {
+        // computed value of the previous versions, which must be kept to read existing profiles
+        private static final long serialVersionUID = 2452383703095337008L;
+
         protected int freq;
         protected AbstractNode[] children;
         char c;
 
         public AbstractNode getChild(char c) {
             if (children==null) return null;
-            final int childcount = children.length;
-            for (int i=0; i<childcount;i++) {
-                if (children[i].c==c) return children[i];
-                if (children[i].c>c) return null;
+            return findChild(children, children.length, c);
+        }
+
+        /**
+         * Looks for a child among the first sorted children of a node, using a linear scan for tiny nodes and a
+         * binary search for the others.
+         *
+         * @param children   the children, sorted by character
+         * @param childcount the number of children
+         * @param c          the character of the child
+         * @return the child, or null if there's no such child
+         */
+        static AbstractNode findChild(AbstractNode[] children, int childcount, char c) {
+            if (childcount <= FlatTrie.LINEAR_MAX) {
+                for (int i=0; i<childcount;i++) {
+                    if (children[i].c==c) return children[i];
+                    if (children[i].c>c) return null;
+                }
+                return null;
+            }
+            int lo = 0;
+            int hi = childcount - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                final char midChar = children[mid].c;
+                if (midChar < c) {
+                    lo = mid + 1;
+                } else if (midChar > c) {
+                    hi = mid - 1;
+                } else {
+                    return children[mid];
+                }
             }
             return null;
         }
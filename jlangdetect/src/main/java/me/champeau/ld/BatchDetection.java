@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Detects the language of a range of documents, splitting the range between the workers of a fork-join pool. Each
+ * leaf task scores its documents with the same scratch buffers, so that a batch allocates per leaf rather than per
+ * document.
+ */
+class BatchDetection extends RecursiveAction {
+    private static final long serialVersionUID = -2871360364513843921L;
+
+    private final MultiGramTree tree;
+    private final boolean[] active;
+    private final List<? extends CharSequence> texts;
+    private final String[] results;
+    private final int from;
+    private final int to;
+    private final int leafSize;
+    private final DetectionListener listener;
+
+    /**
+     * @param tree     the merged tree used to score the documents
+     * @param active   the languages to be scored
+     * @param texts    the documents, which should support random access
+     * @param results  receives the detected language of each document
+     * @param from     the index of the first document of this task, inclusive
+     * @param to       the index of the last document of this task, exclusive
+     * @param leafSize the number of documents below which a task is not split anymore
+     * @param listener the listener notified of the detection of each document, or null
+     */
+    BatchDetection(MultiGramTree tree, boolean[] active, List<? extends CharSequence> texts, String[] results,
+                   int from, int to, int leafSize, DetectionListener listener) {
+        this.tree = tree;
+        this.active = active;
+        this.texts = texts;
+        this.results = results;
+        this.from = from;
+        this.to = to;
+        this.leafSize = leafSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Computes a leaf size giving each worker several tasks, so that work can be stolen from slow leaves.
+     *
+     * @param count       the number of documents
+     * @param parallelism the parallelism of the pool
+     * @return the leaf size
+     */
+    static int leafSize(int count, int parallelism) {
+        return Math.max(16, count / (parallelism * 8));
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= leafSize) {
+            final double[] scores = new double[tree.size()];
+            final int[] scratch = new int[tree.size()];
+            final long[] hits = listener == null ? null : new long[tree.size()];
+            for (int i = from; i < to; i++) {
+                results[i] = LangDetector.detect(tree, texts.get(i), active, scores, scratch, hits, listener);
+            }
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        invokeAll(new BatchDetection(tree, active, texts, results, from, middle, leafSize, listener),
+                new BatchDetection(tree, active, texts, results, middle, to, leafSize, listener));
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An immutable language detector which remembers the languages detected for the most recent texts, so that texts
+ * which recur, like search queries or chat messages, are only scored once. Results are cached per text and
+ * {@link LanguageMask mask} of the restricted languages, a set of languages and the mask of the same languages giving
+ * the same results, and the least recently used ones are evicted once the cache is full.
+ * <p>
+ * Texts which are not cached are detected by the wrapped detector, so that its profiles are only loaded when a
+ * detection needs them, and are not merged twice. The methods which are not cached, like scoring or streaming, use
+ * the profiles the wrapped detector had when this one was created, sharing those which are not loaded yet.
+ * <p>
+ * The cache is split into stripes, each one being an LRU map with its own lock, so that concurrent detections rarely
+ * contend. Only texts up to a maximum length are cached, which bounds the memory used by the cache, and long texts
+ * rarely recur anyway.
+ * <p>
+ * Detections answered by the cache are not notified to the {@link DetectionListener}, which only sees the texts
+ * actually scored.
+ */
+public class CachingLangDetector extends LangDetector {
+    private static final int MAX_STRIPES = 16;
+    private static final int DEFAULT_MAXIMUM_TEXT_LENGTH = 256;
+    // cached in place of null results, which are found by identity
+    private static final String NO_LANGUAGE = new String();
+
+    private final LangDetector detector;
+    // the mask of all the languages, which most detections are restricted to
+    private final LanguageMask languages;
+    private final Stripe[] stripes;
+    private final int maximumTextLength;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a detector caching texts up to 256 characters.
+     *
+     * @param detector    the detector to which detections are delegated
+     * @param maximumSize the maximum number of cached results
+     */
+    public CachingLangDetector(LangDetector detector, int maximumSize) {
+        this(detector, maximumSize, DEFAULT_MAXIMUM_TEXT_LENGTH);
+    }
+
+    /**
+     * @param detector          the detector to which detections are delegated. Languages registered in this detector
+     *                          later on are not seen.
+     * @param maximumSize       the maximum number of cached results
+     * @param maximumTextLength the length of the longest cached text
+     */
+    public CachingLangDetector(LangDetector detector, int maximumSize, int maximumTextLength) {
+        super(detector.getProfiles(), true);
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        this.detector = detector;
+        this.languages = LanguageMask.of(getLanguages());
+        this.maximumTextLength = maximumTextLength;
+        int stripeCount = 1;
+        while (stripeCount < MAX_STRIPES && stripeCount * 2 <= maximumSize) {
+            stripeCount *= 2;
+        }
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(maximumSize / stripeCount + (i < maximumSize % stripeCount ? 1 : 0));
+        }
+    }
+
+    @Override
+    public String detectLang(CharSequence aText, Set<String> languageRestrictions) {
+        if (aText.length() > maximumTextLength) {
+            return detector.detectLang(aText, languageRestrictions, getDetectionListener());
+        }
+        final Key key = new Key(aText.toString(), maskOf(languageRestrictions));
+        final String cached = find(key);
+        if (cached != null) return cached == NO_LANGUAGE ? null : cached;
+        final String language = detector.detectLang(key.text, languageRestrictions, getDetectionListener());
+        store(key, language);
+        return language;
+    }
+
+    @Override
+    public String detectLang(CharSequence aText, LanguageMask languageRestrictions) {
+        if (aText.length() > maximumTextLength) {
+            return detector.detectLang(aText, languageRestrictions, getDetectionListener());
+        }
+        final Key key = new Key(aText.toString(), languageRestrictions);
+        final String cached = find(key);
+        if (cached != null) return cached == NO_LANGUAGE ? null : cached;
+        final String language = detector.detectLang(key.text, languageRestrictions, getDetectionListener());
+        store(key, language);
+        return language;
+    }
+
+    /**
+     * Looks for each document in the cache, then detects the language of the documents which are not cached in
+     * parallel, see {@link LangDetector#detectLangs(List, Set, ForkJoinPool)}.
+     */
+    @Override
+    public List<String> detectLangs(List<? extends CharSequence> texts, Set<String> languageRestrictions, ForkJoinPool pool) {
+        final String[] results = new String[texts.size()];
+        final Key[] keys = new Key[results.length];
+        final List<CharSequence> missed = new ArrayList<CharSequence>();
+        final int[] missedIndexes = new int[results.length];
+        final LanguageMask mask = maskOf(languageRestrictions);
+        for (int i = 0; i < results.length; i++) {
+            final CharSequence text = texts.get(i);
+            if (text.length() <= maximumTextLength) {
+                keys[i] = new Key(text.toString(), mask);
+                final String language = find(keys[i]);
+                if (language != null) {
+                    results[i] = language == NO_LANGUAGE ? null : language;
+                    continue;
+                }
+            }
+            missedIndexes[missed.size()] = i;
+            missed.add(text);
+        }
+        if (!missed.isEmpty()) {
+            final List<String> detected = detector.detectLangs(missed, languageRestrictions, pool, getDetectionListener());
+            for (int j = 0; j < detected.size(); j++) {
+                final int i = missedIndexes[j];
+                results[i] = detected.get(j);
+                if (keys[i] != null) store(keys[i], results[i]);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return the number of detections answered by the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of cacheable detections which were not cached
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the ratio of cacheable detections answered by the cache, 0 if there has been none
+     */
+    public double getHitRate() {
+        final long hitCount = hits.sum();
+        final long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return the number of results evicted to make room for new ones
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of cached results
+     */
+    public int getSize() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all the cached results. Statistics are kept.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Looks for a cached result, counting hits and misses.
+     *
+     * @return the cached language, {@link #NO_LANGUAGE} for cached null results, or null if not cached
+     */
+    private String find(Key key) {
+        final String language = stripeOf(key).find(key);
+        if (language != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return language;
+    }
+
+    private void store(Key key, String language) {
+        stripeOf(key).store(key, language);
+    }
+
+    /**
+     * @return the mask of the provided languages, computed once for all the languages of the detector
+     */
+    private LanguageMask maskOf(Set<String> languageRestrictions) {
+        return languageRestrictions == getLanguages() ? languages : LanguageMask.of(languageRestrictions);
+    }
+
+    private Stripe stripeOf(Key key) {
+        // the high bits of the hash are spread, as the map of the stripe uses the low ones
+        final int hash = key.hash ^ (key.hash >>> 16);
+        return stripes[(hash >>> 8) & (stripes.length - 1)];
+    }
+
+    /**
+     * A text and the mask of the languages it may be in. Masks are immutable, so keys can be stored as they are.
+     */
+    private static final class Key {
+        private final String text;
+        private final LanguageMask languages;
+        private final int hash;
+
+        private Key(String text, LanguageMask languages) {
+            this.text = text;
+            this.languages = languages;
+            this.hash = 31 * text.hashCode() + languages.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return hash == key.hash && text.equals(key.text) && languages.equals(key.languages);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A part of the cache, guarded by its own lock.
+     */
+    private final class Stripe extends LinkedHashMap<Key, String> {
+        private static final long serialVersionUID = 7725620392818466517L;
+
+        private final int capacity;
+
+        private Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        private synchronized String find(Key key) {
+            return get(key);
+        }
+
+        private synchronized void store(Key key, String language) {
+            put(key, language == null ? NO_LANGUAGE : language);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+            if (size() <= capacity) return false;
+            evictions.increment();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable n-gram tree stored as a few parallel primitive arrays instead of a graph of nodes. The structure of the
+ * tree is described by a {@link FlatTrie}, and <i>scores[n]</i> is the score of the n-gram represented by node
+ * <i>n</i>. Lookups only touch contiguous memory, and there is no per-node object overhead.
+ * <p>
+ * Scores are compiled once : the score of an n-gram is the logarithm of its frequency divided by the logarithm of the
+ * total number of n-grams, so that scoring a text only requires additions. As scores are stored as floats, the
+ * result of {@link #scoreText(CharSequence)} may differ from the one of an {@link AbstractGramTree} holding the same
+ * n-grams, within a relative {@link #SCORE_TOLERANCE}.
+ * <p>
+ * Thread-safe.
+ */
+public class CompiledGramTree extends AbstractGramTree {
+    private final static Logger theLogger = LoggerFactory.getLogger(CompiledGramTree.class);
+
+    private static final long serialVersionUID = -2719473580917614702L;
+
+    /**
+     * The maximal relative difference between the score of a text computed from compiled scores, and the score
+     * computed from the n-gram frequencies.
+     */
+    public static final double SCORE_TOLERANCE = 1e-6;
+
+    private final FlatTrie trie;
+    private final float[] scores;
+
+    /**
+     * Compiles the tree of nodes starting at the provided root.
+     *
+     * @param root      the root of the tree
+     * @param min       minimal n-gram size
+     * @param max       maximal n-gram size
+     * @param gramCount the total number of n-grams learnt
+     */
+    protected CompiledGramTree(AbstractNode root, int min, int max, long gramCount) {
+        super(min, max, gramCount);
+        List<AbstractNode> nodes = new ArrayList<AbstractNode>();
+        nodes.add(root);
+        // breadth-first numbering : the children of a node are appended after all the nodes seen so far
+        for (int i = 0; i < nodes.size(); i++) {
+            final AbstractNode[] nodeChildren = nodes.get(i).children;
+            if (nodeChildren == null) continue;
+            for (AbstractNode child : nodeChildren) {
+                if (child == null) break;
+                nodes.add(child);
+            }
+        }
+        final int count = nodes.size();
+        final char[] labels = new char[count];
+        final int[] children = new int[count + 1];
+        scores = new float[count];
+        final double norm = Math.log(gramCount);
+        int next = 1;
+        for (int i = 0; i < count; i++) {
+            final AbstractNode node = nodes.get(i);
+            labels[i] = node.c;
+            scores[i] = (float) (Math.log(node.freq) / norm);
+            children[i] = next;
+            if (node.children != null) {
+                for (AbstractNode child : node.children) {
+                    if (child == null) break;
+                    next++;
+                }
+            }
+        }
+        children[count] = next;
+        trie = new FlatTrie(labels, children);
+    }
+
+    /**
+     * Creates a tree from its compiled representation.
+     *
+     * @param trie      the structure of the tree
+     * @param scores    the score of each node
+     * @param min       minimal n-gram size
+     * @param max       maximal n-gram size
+     * @param gramCount the total number of n-grams learnt
+     */
+    CompiledGramTree(FlatTrie trie, float[] scores, int min, int max, long gramCount) {
+        super(min, max, gramCount);
+        this.trie = trie;
+        this.scores = scores;
+    }
+
+    /**
+     * @return the number of nodes of this tree, including the root
+     */
+    public int getNodeCount() {
+        return trie.getNodeCount();
+    }
+
+    @Override
+    public double scoreText(CharSequence text) {
+        final int length = text.length();
+        final double tot = scorePositions(text, 0, length, NGramIterator.maxWindow(length, min, max));
+        if (theLogger.isDebugEnabled()) {
+            theLogger.debug(text + ", total " + tot);
+        }
+        return tot;
+    }
+
+    @Override
+    double scorePositions(CharSequence text, int from, int to, int maxWindow) {
+        final int length = text.length();
+        double tot = 0;
+        if (maxWindow >= min) {
+            for (int pos = from; pos < to; pos++) {
+                final int last = Math.min(maxWindow, length - pos);
+                int node = 0;
+                for (int window = 1; window <= last; window++) {
+                    node = trie.findChild(node, text.charAt(pos + window - 1));
+                    if (node < 0) break;
+                    if (window >= min) tot += scores[node];
+                }
+            }
+        }
+        return tot;
+    }
+
+    FlatTrie getTrie() {
+        return trie;
+    }
+
+    float[] getScores() {
+        return scores;
+    }
+
+    @Override
+    boolean canMerge() {
+        return true;
+    }
+
+    @Override
+    void visitGrams(GramVisitor visitor) {
+        visitGrams(0, new char[max], 0, visitor);
+    }
+
+    private void visitGrams(int node, char[] gram, int depth, GramVisitor visitor) {
+        for (int child = trie.children[node]; child < trie.children[node + 1]; child++) {
+            gram[depth] = trie.labels[child];
+            visitor.visit(gram, depth + 1, scores[child]);
+            visitGrams(child, gram, depth + 1, visitor);
+        }
+    }
+}
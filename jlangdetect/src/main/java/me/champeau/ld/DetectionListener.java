@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+/**
+ * Notified of the detections performed by a {@link LangDetector}, see
+ * {@link LangDetector#setDetectionListener(DetectionListener)}. Listeners are called from the detecting threads,
+ * possibly concurrently, and should return quickly.
+ *
+ * @see DetectionMetrics
+ */
+public interface DetectionListener {
+    /**
+     * Called once a detection is complete.
+     *
+     * @param language the detected language, or null if all scores are 0
+     * @param chars    the number of characters of the text which have been scored
+     * @param nanos    the duration of the detection, in nanoseconds
+     */
+    void detected(String language, long chars, long nanos);
+
+    /**
+     * Called for each language profile a text has been scored against, before {@link #detected}. Only the detections
+     * scoring whole texts report their n-grams, and only for the profiles which are merged (see
+     * {@link AbstractGramTree#canMerge()}).
+     *
+     * @param language the language of the profile
+     * @param hits     the number of n-grams of the text found in the profile
+     * @param misses   the number of n-grams of the text not found in the profile
+     */
+    void scored(String language, long hits, long misses);
+}
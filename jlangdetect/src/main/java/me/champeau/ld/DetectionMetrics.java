@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link DetectionListener} which keeps metrics in memory : detection counts, latencies, characters scored, and
+ * n-gram hits and misses per profile. Metrics can be polled, or exposed through JMX :
+ * <pre>
+ * DetectionMetrics metrics = new DetectionMetrics();
+ * detector.setDetectionListener(metrics);
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("me.champeau.ld:type=DetectionMetrics"));
+ * </pre>
+ * Latencies are recorded in a histogram whose buckets split each power of two in four, so that percentiles are known
+ * within 25%. Recording does not lock nor allocate, except the first time a language is seen.
+ * <p>
+ * Thread-safe. Metrics read while detections are recorded may be slightly inconsistent with each other.
+ */
+public class DetectionMetrics implements DetectionListener, DetectionMetricsMXBean {
+    private static final int BUCKETS = 256;
+
+    private final LongAdder detections = new LongAdder();
+    private final LongAdder nullResults = new LongAdder();
+    private final LongAdder chars = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+    private final ConcurrentMap<String, LongAdder> languages = new ConcurrentHashMap<String, LongAdder>();
+    private final ConcurrentMap<String, Matches> matches = new ConcurrentHashMap<String, Matches>();
+
+    public void detected(String language, long chars, long nanos) {
+        detections.increment();
+        this.chars.add(chars);
+        totalNanos.add(nanos);
+        latencies.incrementAndGet(bucket(nanos));
+        if (language == null) {
+            nullResults.increment();
+            return;
+        }
+        LongAdder count = languages.get(language);
+        if (count == null) {
+            final LongAdder created = new LongAdder();
+            count = languages.putIfAbsent(language, created);
+            if (count == null) count = created;
+        }
+        count.increment();
+    }
+
+    public void scored(String language, long hits, long misses) {
+        Matches counts = matches.get(language);
+        if (counts == null) {
+            final Matches created = new Matches();
+            counts = matches.putIfAbsent(language, created);
+            if (counts == null) counts = created;
+        }
+        counts.hits.add(hits);
+        counts.misses.add(misses);
+    }
+
+    public long getDetectionCount() {
+        return detections.sum();
+    }
+
+    public long getNullResultCount() {
+        return nullResults.sum();
+    }
+
+    public double getNullResultRate() {
+        final long count = detections.sum();
+        return count == 0 ? 0 : (double) nullResults.sum() / count;
+    }
+
+    public long getCharactersScored() {
+        return chars.sum();
+    }
+
+    public double getMeanLatencyNanos() {
+        final long count = detections.sum();
+        return count == 0 ? 0 : (double) totalNanos.sum() / count;
+    }
+
+    public long getMedianLatencyNanos() {
+        return getLatencyPercentileNanos(0.5);
+    }
+
+    public long getLatency99thPercentileNanos() {
+        return getLatencyPercentileNanos(0.99);
+    }
+
+    /**
+     * Returns a percentile of the duration of a detection, as the upper bound of the histogram bucket it falls in.
+     *
+     * @param percentile the percentile, between 0 and 1
+     * @return the duration, in nanoseconds, or 0 if there has been no detection
+     */
+    public long getLatencyPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 1) {
+            throw new IllegalArgumentException("Percentile must be comprised between 0.0 and 1.0");
+        }
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latencies.get(i);
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+        final long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    public Map<String, Long> getDetectionsPerLanguage() {
+        final Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : languages.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    public Map<String, Double> getHitRatePerLanguage() {
+        final Map<String, Double> result = new TreeMap<String, Double>();
+        for (Map.Entry<String, Matches> entry : matches.entrySet()) {
+            final long hits = entry.getValue().hits.sum();
+            final long total = hits + entry.getValue().misses.sum();
+            result.put(entry.getKey(), total == 0 ? 0 : (double) hits / total);
+        }
+        return result;
+    }
+
+    public void reset() {
+        detections.reset();
+        nullResults.reset();
+        chars.reset();
+        totalNanos.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            latencies.set(i, 0);
+        }
+        languages.clear();
+        matches.clear();
+    }
+
+    /**
+     * Durations below 4ns have their own bucket, then each power of two is split in four buckets.
+     *
+     * @param nanos a duration
+     * @return the index of its bucket
+     */
+    static int bucket(long nanos) {
+        if (nanos < 4) return (int) Math.max(0, nanos);
+        final int log = 63 - Long.numberOfLeadingZeros(nanos);
+        return (log << 2) | (int) ((nanos >>> (log - 2)) & 3);
+    }
+
+    /**
+     * @param bucket the index of a bucket
+     * @return the longest duration falling in the bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < 4) return bucket;
+        final int log = bucket >>> 2;
+        final long next = (5L + (bucket & 3)) << (log - 2);
+        // the last buckets reach past the longest duration
+        return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+
+    /**
+     * The n-grams of the texts found, or not, in a language profile.
+     */
+    private static final class Matches {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link DetectionMetrics}, so that they can be registered in an MBean server.
+ */
+public interface DetectionMetricsMXBean {
+    /**
+     * @return the number of detections
+     */
+    long getDetectionCount();
+
+    /**
+     * @return the number of detections which did not find any language
+     */
+    long getNullResultCount();
+
+    /**
+     * @return the ratio of detections which did not find any language, 0 if there has been no detection
+     */
+    double getNullResultRate();
+
+    /**
+     * @return the total number of characters scored
+     */
+    long getCharactersScored();
+
+    /**
+     * @return the mean duration of a detection, in nanoseconds
+     */
+    double getMeanLatencyNanos();
+
+    /**
+     * @return the median duration of a detection, in nanoseconds
+     */
+    long getMedianLatencyNanos();
+
+    /**
+     * @return the 99th percentile of the duration of a detection, in nanoseconds
+     */
+    long getLatency99thPercentileNanos();
+
+    /**
+     * @return the number of detections of each language
+     */
+    Map<String, Long> getDetectionsPerLanguage();
+
+    /**
+     * @return for each language profile, the ratio of the n-grams of the texts which have been found in it
+     */
+    Map<String, Double> getHitRatePerLanguage();
+
+    /**
+     * Resets all the metrics.
+     */
+    void reset();
+}
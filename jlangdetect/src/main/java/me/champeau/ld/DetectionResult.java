@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+/**
+ * The result of a language detection which may stop before the end of the text, see
+ * {@link LangDetector#detectLang(CharSequence, java.util.Set, EarlyTermination)} and {@link DetectionStream}.
+ */
+public class DetectionResult {
+    private final String language;
+    private final double score;
+    private final long consumed;
+    private final long length;
+
+    public DetectionResult(final String language, final double score, final long consumed, final long length) {
+        this.language = language;
+        this.score = score;
+        this.consumed = consumed;
+        this.length = length;
+    }
+
+    /**
+     * Builds the result of a detection from the scores of the languages.
+     *
+     * @param tree     the tree which computed the scores
+     * @param active   the languages which have been scored
+     * @param scores   the score of each language
+     * @param consumed the number of characters read
+     * @param length   the length of the text, or -1 if unknown
+     * @return the result
+     */
+    static DetectionResult of(MultiGramTree tree, boolean[] active, double[] scores, long consumed, long length) {
+        double best = 0;
+        for (int i = 0; i < scores.length; i++) {
+            if (active[i]) best = Math.max(best, scores[i]);
+        }
+        return new DetectionResult(LangDetector.bestLanguage(tree, active, scores), best, consumed, length);
+    }
+
+    /**
+     * @return the detected language, or null if all scores are 0
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * @return the score of the detected language, on the consumed part of the text only
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * @return the number of characters of the text which have been read to detect the language
+     */
+    public long getConsumed() {
+        return consumed;
+    }
+
+    /**
+     * @return the length of the text, or -1 if it is unknown because reading a stream stopped before its end
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return true if the whole text has been read, in which case the detected language is the one returned by
+     * {@link LangDetector#detectLang(CharSequence, java.util.Set)}
+     */
+    public boolean isComplete() {
+        return consumed == length;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("DetectionResult");
+        sb.append("{language='").append(language).append('\'');
+        sb.append(", score=").append(score);
+        sb.append(", consumed=").append(consumed);
+        sb.append(", length=").append(length);
+        sb.append('}');
+        return sb.toString();
+    }
+}
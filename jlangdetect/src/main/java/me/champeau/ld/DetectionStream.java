@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.nio.CharBuffer;
+
+/**
+ * Detects the language of a text which is appended piece by piece, in constant memory. Each position of the text is
+ * scored as soon as the longest n-gram starting there is known, and only the last characters, which may start n-grams
+ * overlapping the next piece, are kept. The detected language is the one {@link LangDetector#detectLang(CharSequence,
+ * java.util.Set)} would detect on the whole text.
+ * <p>
+ * Streams are obtained from {@link LangDetector#newDetectionStream(java.util.Set)}. They are not thread-safe.
+ */
+public class DetectionStream {
+    private final static int BUFFER_SIZE = 4096;
+
+    private final MultiGramTree tree;
+    private final boolean[] active;
+    private final double[] scores;
+    private final int[] effectiveMax;
+    private final int maxLength;
+    private final char[] buffer;
+    private final CharBuffer window;
+    private int length;
+    private long consumed;
+    private int max = -1;
+
+    DetectionStream(MultiGramTree tree, boolean[] active) {
+        this.tree = tree;
+        this.active = active;
+        scores = new double[tree.size()];
+        effectiveMax = new int[tree.size()];
+        maxLength = Math.max(1, tree.maxLength(active));
+        buffer = new char[BUFFER_SIZE + maxLength];
+        window = CharBuffer.wrap(buffer);
+    }
+
+    /**
+     * Appends characters to the text.
+     *
+     * @param chars  the characters
+     * @param offset the offset of the first character to be appended
+     * @param count  the number of characters to be appended
+     */
+    public void append(char[] chars, int offset, int count) {
+        while (count > 0) {
+            final int n = Math.min(count, buffer.length - length);
+            System.arraycopy(chars, offset, buffer, length, n);
+            append(n);
+            offset += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Appends characters to the text.
+     *
+     * @param chars the characters
+     */
+    public void append(CharSequence chars) {
+        if (chars instanceof CharBuffer && ((CharBuffer) chars).hasArray()) {
+            final CharBuffer cb = (CharBuffer) chars;
+            append(cb.array(), cb.arrayOffset() + cb.position(), cb.remaining());
+            return;
+        }
+        int offset = 0;
+        int count = chars.length();
+        while (count > 0) {
+            final int n = Math.min(count, buffer.length - length);
+            if (chars instanceof String) {
+                ((String) chars).getChars(offset, offset + n, buffer, length);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    buffer[length + i] = chars.charAt(offset + i);
+                }
+            }
+            append(n);
+            offset += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * @return the number of characters appended so far
+     */
+    public long getConsumed() {
+        return consumed;
+    }
+
+    /**
+     * Scores the remaining positions and returns the detected language. The stream must not be used anymore
+     * afterwards.
+     *
+     * @return the detected language
+     */
+    public DetectionResult finish() {
+        return finish(true);
+    }
+
+    /**
+     * Scores the remaining positions and returns the detected language.
+     *
+     * @param complete true if the whole text has been appended, false if the text has been truncated
+     * @return the detected language, with an unknown length if the text has been truncated
+     */
+    DetectionResult finish(boolean complete) {
+        if (max < 0) {
+            // the whole text is short enough to fit in the buffer
+            tree.scoreText(CharBuffer.wrap(buffer, 0, length), active, scores, effectiveMax);
+        } else {
+            tree.scorePositions(window.subSequence(0, length), 0, length, max, active, scores, effectiveMax);
+        }
+        length = 0;
+        return DetectionResult.of(tree, active, scores, consumed, complete ? consumed : -1);
+    }
+
+    private void append(int n) {
+        length += n;
+        consumed += n;
+        if (max < 0) {
+            if (length <= maxLength) return;
+            // past that length, the longest n-gram of each language does not depend on the length of the text
+            max = tree.startScoring(length, active, scores, effectiveMax);
+        }
+        // positions whose longest n-gram is fully known
+        final int scorable = length - maxLength + 1;
+        if (scorable <= 0 || length < buffer.length) return;
+        tree.scorePositions(window.subSequence(0, length), 0, scorable, max, active, scores, effectiveMax);
+        System.arraycopy(buffer, scorable, buffer, 0, length - scorable);
+        length -= scorable;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+/**
+ * Configures a language detection which reads the text by chunks and stops as soon as the leading language is known
+ * with enough confidence. After each chunk :
+ * <ul>
+ * <li>languages which cannot catch up with the leader anymore, even if every remaining n-gram of the text scored its
+ * best possible score for them, are dropped. This never changes the detected language.</li>
+ * <li>if a single language is left, or if the leader is ahead of the runner-up by at least the configured margin,
+ * relatively to its own score, the detection stops.</li>
+ * </ul>
+ * Stopping on the margin may, on unusual texts such as mixed-language documents, detect another language than a full
+ * detection would. With a margin of 1, the detection only stops early when no other language scores at all.
+ */
+public class EarlyTermination {
+    /**
+     * Reads texts by chunks of 128 characters, and stops when the leader is 5% ahead of the runner-up. With the
+     * Europarl profiles, the leader of a text written in a single language is usually 5 to 10% ahead of the
+     * runner-up, whatever the length of the text.
+     */
+    public final static EarlyTermination DEFAULT = new EarlyTermination(128, 0.05);
+
+    private final int chunkSize;
+    private final double margin;
+
+    /**
+     * @param chunkSize the number of positions of the text scored between two checks
+     * @param margin    the relative lead of the leading language over the runner-up after which the detection stops,
+     *                  between 0 and 1
+     */
+    public EarlyTermination(final int chunkSize, final double margin) {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive");
+        if (margin < 0 || margin > 1) throw new IllegalArgumentException("Margin must be between 0 and 1");
+        this.chunkSize = chunkSize;
+        this.margin = margin;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public double getMargin() {
+        return margin;
+    }
+
+    /**
+     * Detects the language of a text, reading as few chunks as possible.
+     *
+     * @param tree       the merged tree of the languages
+     * @param text       the text for which to detect the language
+     * @param candidates the languages to be scored
+     * @return the detected language, and how much of the text has been read
+     */
+    DetectionResult detect(MultiGramTree tree, CharSequence text, boolean[] candidates) {
+        final int len = text.length();
+        final boolean[] active = candidates.clone();
+        final double[] scores = new double[tree.size()];
+        final int[] effectiveMax = new int[tree.size()];
+        final int max = tree.startScoring(len, active, scores, effectiveMax);
+        int pos = 0;
+        while (pos < len) {
+            final int next = Math.min(len, pos + chunkSize);
+            tree.scorePositions(text, pos, next, max, active, scores, effectiveMax);
+            pos = next;
+            if (pos < len && shouldStop(tree, active, scores, effectiveMax, len - pos)) break;
+        }
+        final int consumed = pos < len ? Math.min(len, pos + max - 1) : len;
+        return DetectionResult.of(tree, active, scores, consumed, len);
+    }
+
+    /**
+     * Drops the languages which cannot catch up with the leader, then tells if the leader is known.
+     *
+     * @param tree         the merged tree of the languages
+     * @param active       the languages still in the race, updated
+     * @param scores       the current scores
+     * @param effectiveMax the longest n-gram scored in each language
+     * @param remaining    the number of positions of the text which have not been scored yet
+     * @return true if the detection can stop
+     */
+    private boolean shouldStop(MultiGramTree tree, boolean[] active, double[] scores, int[] effectiveMax, int remaining) {
+        double best = 0;
+        for (int i = 0; i < scores.length; i++) {
+            if (active[i]) best = Math.max(best, scores[i]);
+        }
+        int left = 0;
+        double second = 0;
+        boolean leaderFound = false;
+        for (int i = 0; i < scores.length; i++) {
+            if (!active[i]) continue;
+            if (scores[i] + remaining * tree.maxGainPerPosition(i, effectiveMax) < best) {
+                active[i] = false;
+                continue;
+            }
+            left++;
+            if (scores[i] == best && !leaderFound) {
+                leaderFound = true;
+            } else {
+                second = Math.max(second, scores[i]);
+            }
+        }
+        return left <= 1 || (best > 0 && best - second >= margin * best);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.io.Serializable;
+
+/**
+ * The structure of a lexical tree laid out in primitive arrays. Nodes are numbered in breadth-first order, the root
+ * being node 0, so that the children of a node are contiguous : <i>labels[n]</i> is the character leading to node
+ * <i>n</i>, and the children of node <i>n</i> are the nodes <i>children[n]</i> to <i>children[n+1]-1</i>, sorted by
+ * label.
+ * <p>
+ * The way a child is looked up depends on the fan-out of its parent : a linear scan for tiny nodes, a binary search
+ * for medium ones, and a hash table for huge ones, like the root of the chinese or japanese trees which has thousands
+ * of children.
+ * <p>
+ * Immutable, hence thread-safe.
+ */
+final class FlatTrie implements Serializable {
+    private static final long serialVersionUID = -6250307716359451327L;
+
+    /**
+     * Nodes having up to this number of children are scanned linearly.
+     */
+    static final int LINEAR_MAX = 8;
+
+    /**
+     * Nodes having at least this number of children use a hash table.
+     */
+    static final int HASHED_MIN = 64;
+
+    final char[] labels;
+    final int[] children;
+
+    // hashed nodes are flagged in a bitset, their rank in the bitset being the index of their table
+    final long[] hashed;
+    final int[] hashedRanks;
+    final int[] tableOffsets;
+    final int[] tables;
+
+    /**
+     * @param labels   the label of each node
+     * @param children the offset of the children of each node, with an extra trailing element
+     */
+    FlatTrie(char[] labels, int[] children) {
+        this.labels = labels;
+        this.children = children;
+        final int nodeCount = labels.length;
+        hashed = new long[(nodeCount + 63) >>> 6];
+        hashedRanks = new int[hashed.length];
+        int tableCount = 0;
+        int tableSize = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            final int fanout = children[node + 1] - children[node];
+            if (fanout >= HASHED_MIN) {
+                hashed[node >>> 6] |= 1L << node;
+                tableCount++;
+                tableSize += 1 << tableBits(fanout);
+            }
+        }
+        for (int i = 1; i < hashed.length; i++) {
+            hashedRanks[i] = hashedRanks[i - 1] + Long.bitCount(hashed[i - 1]);
+        }
+        tableOffsets = new int[tableCount];
+        tables = new int[tableSize];
+        int table = 0;
+        int offset = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            final int fanout = children[node + 1] - children[node];
+            if (fanout < HASHED_MIN) continue;
+            final int bits = tableBits(fanout);
+            final int mask = (1 << bits) - 1;
+            tableOffsets[table++] = offset;
+            for (int child = children[node]; child < children[node + 1]; child++) {
+                int slot = hash(labels[child], bits);
+                // the root is never a child, so 0 marks empty slots
+                while (tables[offset + slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                tables[offset + slot] = child;
+            }
+            offset += 1 << bits;
+        }
+    }
+
+    /**
+     * Creates a trie from previously computed lookup tables.
+     */
+    FlatTrie(char[] labels, int[] children, long[] hashed, int[] hashedRanks, int[] tableOffsets, int[] tables) {
+        this.labels = labels;
+        this.children = children;
+        this.hashed = hashed;
+        this.hashedRanks = hashedRanks;
+        this.tableOffsets = tableOffsets;
+        this.tables = tables;
+    }
+
+    /**
+     * @return the number of nodes, including the root
+     */
+    int getNodeCount() {
+        return labels.length;
+    }
+
+    /**
+     * Looks for the child of a node.
+     *
+     * @param node the parent node
+     * @param c    the label of the child
+     * @return the child node, or -1 if there's no such child
+     */
+    int findChild(int node, char c) {
+        final int start = children[node];
+        final int end = children[node + 1];
+        final int fanout = end - start;
+        if (fanout <= LINEAR_MAX) {
+            for (int i = start; i < end; i++) {
+                final char label = labels[i];
+                if (label == c) return i;
+                if (label > c) return -1;
+            }
+            return -1;
+        }
+        if (fanout < HASHED_MIN) {
+            int lo = start;
+            int hi = end - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                final char label = labels[mid];
+                if (label < c) {
+                    lo = mid + 1;
+                } else if (label > c) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+        final int word = node >>> 6;
+        final int rank = hashedRanks[word] + Long.bitCount(hashed[word] & ((1L << node) - 1));
+        final int offset = tableOffsets[rank];
+        final int bits = tableBits(fanout);
+        final int mask = (1 << bits) - 1;
+        int slot = hash(c, bits);
+        while (true) {
+            final int child = tables[offset + slot];
+            if (child == 0) return -1;
+            if (labels[child] == c) return child;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @param fanout the number of children of a node
+     * @return the log2 of the size of its hash table, which is kept at most half full
+     */
+    static int tableBits(int fanout) {
+        return 32 - Integer.numberOfLeadingZeros(2 * fanout - 1);
+    }
+
+    static int hash(char c, int bits) {
+        return (c * 0x9E3779B1) >>> (32 - bits);
+    }
+}
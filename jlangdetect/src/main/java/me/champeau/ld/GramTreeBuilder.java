@@ -21,13 +21,19 @@ package me.champeau.ld;
 
 import me.champeau.ld.learn.util.LearningException;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.*;
 
 /**
  * A gram tree is used to learn n-grams from texts, and is able to score a text. The n-gram data is represented as a
  * lexical tree. The representation is rather compact, but one could do better with annotated-DFAs.
  * <p>
- * Not thread-safe.
+ * Not thread-safe. To learn a corpus in parallel, learn each part of it with its own builder, then
+ * {@link #merge(GramTreeBuilder) merge} the builders.
  *
  */
 public class GramTreeBuilder extends AbstractGramTree {
@@ -35,6 +41,8 @@ public class GramTreeBuilder extends AbstractGramTree {
     private static final long serialVersionUID = 4421643808498040212L;
     private boolean built = false;
     private double truncationThreshold = 1.0;
+    private int maxNodeCount = Integer.MAX_VALUE;
+    private long maxProfileSize = Long.MAX_VALUE;
 
     /**
      * Builds an n-gram tree
@@ -54,50 +62,309 @@ public class GramTreeBuilder extends AbstractGramTree {
         this.truncationThreshold = truncationThreshold;
     }
 
+    /**
+     * Bounds the number of nodes of the built tree, root included. The nodes are kept from the most frequent down, and
+     * the nodes of the lowest kept frequency are kept in preorder until the bound is reached. A node is only kept
+     * along with its parent : as every prefix of an n-gram is itself an n-gram when the minimal n-gram size is 1, it
+     * is at least as frequent, and the tree has exactly as many nodes as the bound, unless it has fewer nodes anyway.
+     * The bound applies to the n-grams left by the truncation threshold.
+     *
+     * @param maxNodeCount the maximum number of nodes, at least 1
+     * @throws IllegalStateException if the minimal n-gram size is not 1, as the shorter prefixes are then not counted
+     */
+    public void setMaxNodeCount(final int maxNodeCount) {
+        if (maxNodeCount < 1) {
+            throw new IllegalArgumentException("The root node cannot be truncated");
+        }
+        checkBudgetable();
+        this.maxNodeCount = maxNodeCount;
+    }
+
+    /**
+     * Bounds the size of the built tree once written with {@link ProfileFormat#write(CompiledGramTree, OutputStream)},
+     * which is also its size in memory, give or take a few object headers. As many of the most frequent n-grams as
+     * fit are kept, see {@link #setMaxNodeCount(int)}.
+     *
+     * @param maxProfileSize the maximum size in bytes, at least the size of a profile made of the root only
+     * @throws IllegalStateException if the minimal n-gram size is not 1
+     */
+    public void setMaxProfileSize(final long maxProfileSize) {
+        if (maxProfileSize < ProfileFormat.size(1, 0, 0)) {
+            throw new IllegalArgumentException("Profile size must be at least " + ProfileFormat.size(1, 0, 0) + " bytes");
+        }
+        checkBudgetable();
+        this.maxProfileSize = maxProfileSize;
+    }
+
+    private void checkBudgetable() {
+        if (min != 1) {
+            throw new IllegalStateException("Budgets require a minimal n-gram size of 1, not " + min);
+        }
+    }
+
     /**
      * Adds n-grams statistics to the n-gram tree.
      *
      * @param text character sequence to learn n-grams from.
      */
     public void learn(CharSequence text) {
+        final int length = text.length();
+        learnPositions(text, 0, length, NGramIterator.maxWindow(length, min, max));
+    }
+
+    /**
+     * Returns a writer which learns the n-grams of the text written to it. A long text can then be learnt piece by
+     * piece, in constant memory. Learning a text this way is the same as calling {@link #learn(CharSequence)} with the
+     * whole text : n-grams overlapping two pieces are learnt. The text is completely learnt once the writer is closed.
+     *
+     * @return a writer learning the text written to it
+     */
+    public Writer newTextWriter() {
         if (built) throw new IllegalStateException("N-Gram tree has already been built");
-        NGramTokenizer tokenizer = new NGramTokenizer(text, min, max);
-        for (CharSequence token : tokenizer) {
-            addGram(token);
-        }
+        return new LearningWriter(new LearningWriter.Learner() {
+            public void learn(CharSequence text, int from, int to, int maxWindow) {
+                learnPositions(text, from, to, maxWindow);
+            }
+        }, min, max);
     }
 
     /**
-     * Adds a single n-gram to the n-gram tree.
+     * Adds the n-grams starting between the provided positions to the n-gram tree. As the n-grams starting at a given
+     * position share the same prefix, they are all counted in a single descent from the root.
      *
-     * @param gram n-gram to be added to the tree.
+     * @param text      the text, or a window of it which includes the n-grams starting at the learnt positions
+     * @param from      the first position to be learnt, inclusive
+     * @param to        the last position to be learnt, exclusive
+     * @param maxWindow size of the longest n-gram to be learnt
      */
-    private void addGram(CharSequence gram) {
+    private void learnPositions(CharSequence text, int from, int to, int maxWindow) {
         if (built) throw new IllegalStateException("N-Gram tree has already been built");
-        NodeBuilder cur = (NodeBuilder) root;
-        for (int i = 0; i < gram.length(); i++) {
-            char c = gram.charAt(i);
-            NodeBuilder next = (NodeBuilder) cur.getChild(c);
-            if (next == null) next = cur.addTransition(c);
-            cur = next;
-            if (i == gram.length() - 1) cur.inc();
+        final int length = text.length();
+        for (int pos = from; pos < to; pos++) {
+            final int last = Math.min(maxWindow, length - pos);
+            if (last < min) continue;
+            NodeBuilder cur = (NodeBuilder) root;
+            for (int window = 1; window <= last; window++) {
+                final char c = text.charAt(pos + window - 1);
+                NodeBuilder next = (NodeBuilder) cur.getChild(c);
+                if (next == null) next = cur.addTransition(c);
+                cur = next;
+                if (window >= min) {
+                    cur.inc();
+                    gramcount++;
+                }
+            }
         }
-        gramcount++;
+    }
+
+    /**
+     * Moves the n-grams learnt by another builder into this one, adding up their frequencies. This allows a corpus to
+     * be split into shards learnt in parallel, each by its own builder, and then merged before being built : as
+     * frequencies are summed, the resulting tree does not depend on how the corpus has been split, nor on the order of
+     * the merges.
+     * <p>
+     * The other builder is left empty, and can be used to learn another shard.
+     *
+     * @param other a builder of n-grams of the same sizes
+     */
+    public void merge(GramTreeBuilder other) {
+        if (built || other.built) throw new IllegalStateException("N-Gram tree has already been built");
+        if (other.min != min || other.max != max) {
+            throw new IllegalArgumentException("Cannot merge n-grams of sizes " + other.min + "-" + other.max + " into " + min + "-" + max);
+        }
+        if (other == this) return;
+        ((NodeBuilder) root).merge((NodeBuilder) other.root);
+        gramcount += other.gramcount;
+        other.root = new NodeBuilder('\u0000');
+        other.gramcount = 0;
+    }
+
+    /**
+     * @return the number of nodes of the tree, root included
+     */
+    int getNodeCount() {
+        if (built) throw new IllegalStateException("N-Gram tree has already been built");
+        return ((NodeBuilder) root).count();
+    }
+
+    /**
+     * Writes the nodes of the tree in preorder : the label, frequency and number of children of each node.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the nodes cannot be written
+     * @see ProfileFormat#writeCounts(GramTreeBuilder, OutputStream)
+     */
+    void writeNodes(DataOutput out) throws IOException {
+        if (built) throw new IllegalStateException("N-Gram tree has already been built");
+        ((NodeBuilder) root).write(out);
+    }
+
+    /**
+     * Reads a builder written by {@link #writeNodes(DataOutput)}.
+     *
+     * @param in        the stream to read from
+     * @param min       minimal n-gram size
+     * @param max       maximum n-gram size
+     * @param gramcount the number of n-grams learnt
+     * @param nodeCount the number of nodes, root included
+     * @return a builder which may learn further texts
+     * @throws IOException if the nodes cannot be read, or are not a valid n-gram tree
+     */
+    static GramTreeBuilder readNodes(DataInput in, int min, int max, long gramcount, int nodeCount) throws IOException {
+        GramTreeBuilder builder = new GramTreeBuilder(min, max);
+        final int[] remaining = {nodeCount};
+        builder.root = NodeBuilder.read(in, max, remaining);
+        if (remaining[0] != 0) throw new IOException("Corrupted count profile");
+        builder.gramcount = gramcount;
+        return builder;
+    }
+
+    /**
+     * A builder is still learning, so its n-grams are not merged with other profiles.
+     */
+    @Override
+    boolean canMerge() {
+        return false;
     }
 
     /**
      * Optimizes the n-gram tree memory consumption.
      *
-     * @return an immutable gram tree
+     * @return an immutable gram tree, stored as a {@link CompiledGramTree}
      */
     public AbstractGramTree build() {
         built = true;
         final NodeBuilder nodeBuilder = (NodeBuilder) root;
-        ArrayList<Integer> freqs = new ArrayList<Integer>();
-        nodeBuilder.collectFreqs(freqs);
-        Collections.sort(freqs);
-        root = nodeBuilder.build(freqs.get((int) (freqs.size()*(1.0-truncationThreshold))));
-        return new GramTreeImpl(root, min, max, gramcount);
+        final int[] freqs = new int[nodeBuilder.count()];
+        nodeBuilder.collectFreqs(freqs, 0);
+        final int minFreq = select(freqs.clone(), (int) (freqs.length * (1.0 - truncationThreshold)));
+        root = nodeBuilder.build(cutoff(freqs, minFreq));
+        return new CompiledGramTree(root, min, max, gramcount);
+    }
+
+    /**
+     * Finds the cutoff keeping as many of the most frequent n-grams as allowed by the node count and profile size
+     * budgets. The profile size grows with the number of nodes, so the largest node count fitting the size budget is
+     * found by a binary search, each step selecting the cutoff frequency in linear time.
+     *
+     * @param freqs   the frequencies of all the nodes, root first
+     * @param minFreq the frequency found at the truncation threshold
+     */
+    private Cutoff cutoff(int[] freqs, int minFreq) {
+        // the root is always kept
+        int candidates = 0;
+        for (int i = 1; i < freqs.length; i++) {
+            if (freqs[i] >= minFreq) freqs[candidates++] = freqs[i];
+        }
+        final int[] scratch = new int[candidates];
+        int hi = (int) Math.min(maxNodeCount - 1L, candidates);
+        // measuring a cutoff uses it up, so the cutoff returned is always a fresh one
+        if (maxProfileSize == Long.MAX_VALUE || size(cutoff(freqs, candidates, hi, minFreq, scratch)) <= maxProfileSize) {
+            return cutoff(freqs, candidates, hi, minFreq, scratch);
+        }
+        // the largest count of kept nodes fitting the budget is in [lo, hi[
+        int lo = 0;
+        while (hi - lo > 1) {
+            final int mid = (lo + hi) >>> 1;
+            if (size(cutoff(freqs, candidates, mid, minFreq, scratch)) <= maxProfileSize) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return cutoff(freqs, candidates, lo, minFreq, scratch);
+    }
+
+    /**
+     * @param candidates the frequencies of the nodes which may be kept, in the first elements of the array
+     * @param count      the number of nodes to keep, root excluded
+     */
+    private static Cutoff cutoff(int[] candidates, int length, int count, int minFreq, int[] scratch) {
+        if (count == length) return new Cutoff(minFreq, minFreq, Integer.MAX_VALUE);
+        if (count == 0) return new Cutoff(minFreq, Integer.MAX_VALUE, 0);
+        System.arraycopy(candidates, 0, scratch, 0, length);
+        final int freq = select(scratch, length - count);
+        int greater = 0;
+        for (int i = 0; i < length; i++) {
+            if (candidates[i] > freq) greater++;
+        }
+        return new Cutoff(minFreq, freq, count - greater);
+    }
+
+    /**
+     * @return the size of the profile built with the provided cutoff
+     */
+    private long size(Cutoff cutoff) {
+        final long[] counts = new long[3];
+        ((NodeBuilder) root).measure(cutoff, counts);
+        return ProfileFormat.size((int) counts[0], (int) counts[1], counts[2]);
+    }
+
+    /**
+     * Finds the k-th smallest value of an array in linear time on average, partially reordering the array.
+     *
+     * @param values the values
+     * @param k      the rank of the value, from 0
+     * @return the value which would be found at index k if the array was sorted
+     */
+    static int select(int[] values, int k) {
+        int lo = 0;
+        int hi = values.length - 1;
+        while (lo < hi) {
+            // median of three, which also avoids quadratic runs on sorted or constant arrays
+            final int mid = (lo + hi) >>> 1;
+            if (values[mid] < values[lo]) swap(values, lo, mid);
+            if (values[hi] < values[lo]) swap(values, lo, hi);
+            if (values[hi] < values[mid]) swap(values, mid, hi);
+            final int pivot = values[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) swap(values, i++, j--);
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+
+    private static void swap(int[] values, int i, int j) {
+        final int value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    /**
+     * Tells which nodes are kept when the tree is built : nodes at least as frequent as the truncation threshold, and
+     * more frequent than the cutoff frequency. Nodes of the cutoff frequency are kept in preorder as long as there are
+     * ties left, which keeps prefixes before the longer n-grams. A node is only looked at if its parent is kept, and
+     * a cutoff must be used for a single traversal.
+     */
+    private static class Cutoff {
+        private final int minFreq;
+        private final int freq;
+        private int ties;
+
+        private Cutoff(int minFreq, int freq, int ties) {
+            this.minFreq = minFreq;
+            this.freq = freq;
+            this.ties = ties;
+        }
+
+        private boolean keeps(int nodeFreq) {
+            if (nodeFreq < minFreq || nodeFreq < freq) return false;
+            if (nodeFreq > freq) return true;
+            if (ties == 0) return false;
+            ties--;
+            return true;
+        }
     }
 
 
@@ -117,11 +384,7 @@ public class GramTreeBuilder extends AbstractGramTree {
 
         public AbstractNode getChild(char c) {
             if (children == null) return null;
-            for (int i = 0; i < childcount; i++) {
-                if (children[i].c == c) return children[i];
-                if (children[i].c > c) return null;
-            }
-            return null;
+            return findChild(children, childcount, c);
         }
 
         public NodeBuilder addTransition(char c) {
@@ -148,31 +411,135 @@ public class GramTreeBuilder extends AbstractGramTree {
             freq++;
         }
 
+        /**
+         * Adds the frequencies of another node and of its followers to this node. Followers which are only known by
+         * the other node are moved to this one.
+         * @param other a node representing the same n-gram
+         */
+        private void merge(NodeBuilder other) {
+            if ((long) freq + other.freq > Integer.MAX_VALUE) {
+                throw new LearningException("Maximum frequency is reached. N-Gram is too frequent in the corpus. Try to use a smaller corpus.");
+            }
+            freq += other.freq;
+            if (other.childcount == 0) return;
+            if (childcount == 0) {
+                children = other.children;
+                childcount = other.childcount;
+                return;
+            }
+            // both children arrays are sorted : merge them, keeping room for a further transition
+            final AbstractNode[] merged = new NodeBuilder[childcount + other.childcount + 1];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < childcount && j < other.childcount) {
+                final NodeBuilder mine = (NodeBuilder) children[i];
+                final NodeBuilder theirs = (NodeBuilder) other.children[j];
+                if (mine.c < theirs.c) {
+                    merged[n++] = mine;
+                    i++;
+                } else if (mine.c > theirs.c) {
+                    merged[n++] = theirs;
+                    j++;
+                } else {
+                    mine.merge(theirs);
+                    merged[n++] = mine;
+                    i++;
+                    j++;
+                }
+            }
+            while (i < childcount) merged[n++] = children[i++];
+            while (j < other.childcount) merged[n++] = other.children[j++];
+            children = merged;
+            childcount = n;
+        }
+
+        private int count() {
+            int count = 1;
+            for (int i = 0; i < childcount; i++) {
+                count += ((NodeBuilder) children[i]).count();
+            }
+            return count;
+        }
+
+        private void write(DataOutput out) throws IOException {
+            out.writeChar(c);
+            out.writeInt(freq);
+            out.writeInt(childcount);
+            for (int i = 0; i < childcount; i++) {
+                ((NodeBuilder) children[i]).write(out);
+            }
+        }
+
+        /**
+         * Reads a node and its followers, which must be sorted and no deeper than the longest n-grams.
+         * @param depth the number of levels which may follow this node
+         * @param remaining the number of nodes still to be read, decremented for each node
+         */
+        private static NodeBuilder read(DataInput in, int depth, int[] remaining) throws IOException {
+            if (--remaining[0] < 0) throw new IOException("Corrupted count profile");
+            final NodeBuilder node = new NodeBuilder(in.readChar());
+            node.freq = in.readInt();
+            final int childcount = in.readInt();
+            if (node.freq < 0 || childcount < 0 || childcount > remaining[0] || (depth == 0 && childcount > 0)) {
+                throw new IOException("Corrupted count profile");
+            }
+            if (childcount == 0) return node;
+            // keep room for a further transition
+            node.children = new NodeBuilder[childcount + 1];
+            for (int i = 0; i < childcount; i++) {
+                final NodeBuilder child = read(in, depth - 1, remaining);
+                if (i > 0 && child.c <= node.children[i - 1].c) throw new IOException("Corrupted count profile");
+                node.children[i] = child;
+            }
+            node.childcount = childcount;
+            return node;
+        }
+
         public int compareTo(NodeBuilder o) {
             return c - o.c;
         }
 
         /**
-         * Builds an immutable n-gram tree from this builder data. The minimal frequency value is used to discard
-         * n-grams which are supposed to be irrelevant for a language, reducing the total amount of memory required
-         * to model a language.
-         * @param minFreq the minimum number of occurrences an n-gram must have been seen to be considered relevant
+         * Builds an immutable n-gram tree from this builder data. The cutoff is used to discard n-grams which are
+         * supposed to be irrelevant for a language, reducing the total amount of memory required to model a language.
+         * @param cutoff tells which n-grams are relevant enough to be kept
          * @return an immutable n-gram tree
          */
-        private AbstractNode build(final int minFreq) {
+        private AbstractNode build(final Cutoff cutoff) {
             if (childcount == 0) return new MinimalNode(c, freq, null);
             List<AbstractNode> children2 = new LinkedList<AbstractNode>();
             for (int i = 0; i < childcount; i++) {
-                if (children[i].freq>=minFreq) children2.add(((NodeBuilder) children[i]).build(minFreq));
+                if (cutoff.keeps(children[i].freq)) children2.add(((NodeBuilder) children[i]).build(cutoff));
             }
             return new MinimalNode(c, freq, children2.isEmpty()?null:children2.toArray(new AbstractNode[children2.size()]));
         }
 
-        public void collectFreqs(ArrayList<Integer> freqs) {
-            freqs.add(freq);
+        /**
+         * Counts what the nodes kept by a cutoff weigh in a profile : the number of nodes, of hash tables and of
+         * slots of the hash tables, see {@link FlatTrie}.
+         */
+        private void measure(final Cutoff cutoff, final long[] counts) {
+            counts[0]++;
+            int kept = 0;
+            for (int i = 0; i < childcount; i++) {
+                if (cutoff.keeps(children[i].freq)) {
+                    kept++;
+                    ((NodeBuilder) children[i]).measure(cutoff, counts);
+                }
+            }
+            if (kept >= FlatTrie.HASHED_MIN) {
+                counts[1]++;
+                counts[2] += 1 << FlatTrie.tableBits(kept);
+            }
+        }
+
+        private int collectFreqs(int[] freqs, int index) {
+            freqs[index++] = freq;
             for (int i=0; i<childcount;i++) {
-                ((NodeBuilder)children[i]).collectFreqs(freqs);
+                index = ((NodeBuilder)children[i]).collectFreqs(freqs, index);
             }
+            return index;
         }
 
     }
@@ -19,10 +19,19 @@ package me.champeau.ld;
 
 /**
  * An immutable n-gram tree implementation, which aims at being as compact as possible as a memory object.
+ * <p>
+ * This is the format of the profiles serialized by previous versions. Such profiles are converted to a
+ * {@link CompiledGramTree} as soon as they are deserialized.
  */
 public class GramTreeImpl extends AbstractGramTree {
+    private static final long serialVersionUID = 7650213853008621731L;
+
     protected GramTreeImpl(AbstractNode root, int min, int max, long gramCount) {
         super(min, max, gramCount);
         this.root = root;
     }
+
+    private Object readResolve() {
+        return root == null ? this : new CompiledGramTree(root, min, max, gramcount);
+    }
 }
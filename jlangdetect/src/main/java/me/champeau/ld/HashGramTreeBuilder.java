@@ -0,0 +1,652 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import me.champeau.ld.learn.util.LearningException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Learns n-grams of at most 3 characters by counting them in a primitive open-addressing hash table, then converts
+ * the counts to a {@link CompiledGramTree} when built. Learning does not allocate per n-gram nor keep children sorted
+ * while inserting, which makes it much faster and lighter than {@link GramTreeBuilder} on corpora with many distinct
+ * characters, such as CJK texts.
+ * <p>
+ * The built tree is the same as the one built by a {@link GramTreeBuilder} which learnt the same texts with the same
+ * truncation threshold. The node count and profile size budgets of {@link GramTreeBuilder#setMaxNodeCount(int)} and
+ * {@link GramTreeBuilder#setMaxProfileSize(long)} are not supported.
+ * <p>
+ * An n-gram is keyed by its characters packed in a long, 17 bits per character : each character is stored plus one,
+ * so that no key is 0 and n-grams of different sizes have different keys. The key of the prefix of an n-gram is its
+ * key shifted right by 17 bits.
+ * <p>
+ * Not thread-safe. To learn a corpus in parallel, learn each part of it with its own builder, then
+ * {@link #merge(HashGramTreeBuilder) merge} the builders.
+ */
+public class HashGramTreeBuilder {
+    /**
+     * The maximal size of the n-grams which can be learnt.
+     */
+    public static final int MAX_GRAM_SIZE = 3;
+
+    private static final int CHAR_BITS = 17;
+    private static final long CHAR_MASK = (1L << CHAR_BITS) - 1;
+    private static final int INITIAL_BITS = 12;
+    private static final int SLOT_BYTES = 12;
+
+    private final int min;
+    private final int max;
+    private double truncationThreshold = 1.0;
+    private boolean built = false;
+    private long gramcount;
+
+    // open-addressing table, a key of 0 denotes an empty slot
+    private long[] keys = new long[1 << INITIAL_BITS];
+    private int[] counts = new int[1 << INITIAL_BITS];
+    private int bits = INITIAL_BITS;
+    private int size;
+
+    // sorted partial counts written to disk when the table exceeds the memory budget
+    private long memoryBudget = Long.MAX_VALUE;
+    private File spillDirectory;
+    private final List<Run> runs = new ArrayList<Run>();
+
+    /**
+     * Builds an n-gram counter
+     *
+     * @param min minimal n-gram size
+     * @param max maximum n-gram size, at most {@link #MAX_GRAM_SIZE}
+     */
+    public HashGramTreeBuilder(int min, int max) {
+        if (min < 1 || max < min || max > MAX_GRAM_SIZE) {
+            throw new IllegalArgumentException("N-gram sizes must be comprised between 1 and " + MAX_GRAM_SIZE);
+        }
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @see GramTreeBuilder#setTruncationThreshold(double)
+     */
+    public void setTruncationThreshold(final double truncationThreshold) {
+        if (truncationThreshold<0 || truncationThreshold>1.0d) {
+            throw new IllegalArgumentException("Truncation threshold must be comprised between 0.0 and 1.0");
+        }
+        this.truncationThreshold = truncationThreshold;
+    }
+
+    /**
+     * Bounds the memory used to count n-grams. When the hash table would grow past the budget, its counts are sorted
+     * and spilled to a temporary file, and the table is emptied. At build time, the spilled counts are merged back,
+     * and the tree is the same as if everything had been counted in memory. Only the n-grams kept after truncation
+     * are then loaded, so that a corpus with more distinct n-grams than fit in memory can be learnt. The temporary
+     * files are deleted once the tree is built, or when the builder is {@link #discard() discarded}.
+     *
+     * @param bytes the maximal size of the hash table, in bytes
+     */
+    public void setMemoryBudget(final long bytes) {
+        if (bytes < (long) SLOT_BYTES << INITIAL_BITS) {
+            throw new IllegalArgumentException("Memory budget must be at least " + ((long) SLOT_BYTES << INITIAL_BITS) + " bytes");
+        }
+        this.memoryBudget = bytes;
+    }
+
+    /**
+     * @param directory the directory where counts are spilled, or null for the default temporary directory
+     * @see #setMemoryBudget(long)
+     */
+    public void setSpillDirectory(final File directory) {
+        this.spillDirectory = directory;
+    }
+
+    /**
+     * Adds n-grams statistics to the counts.
+     *
+     * @param text character sequence to learn n-grams from.
+     */
+    public void learn(CharSequence text) {
+        final int length = text.length();
+        learnPositions(text, 0, length, NGramIterator.maxWindow(length, min, max));
+    }
+
+    /**
+     * @see GramTreeBuilder#newTextWriter()
+     * @return a writer learning the text written to it
+     */
+    public Writer newTextWriter() {
+        if (built) throw new IllegalStateException("N-Gram tree has already been built");
+        return new LearningWriter(new LearningWriter.Learner() {
+            public void learn(CharSequence text, int from, int to, int maxWindow) {
+                learnPositions(text, from, to, maxWindow);
+            }
+        }, min, max);
+    }
+
+    private void learnPositions(CharSequence text, int from, int to, int maxWindow) {
+        if (built) throw new IllegalStateException("N-Gram tree has already been built");
+        final int length = text.length();
+        for (int pos = from; pos < to; pos++) {
+            final int last = Math.min(maxWindow, length - pos);
+            long key = 0;
+            for (int window = 1; window <= last; window++) {
+                key = (key << CHAR_BITS) | (text.charAt(pos + window - 1) + 1);
+                if (window >= min) {
+                    add(key, 1);
+                    gramcount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the counts of another builder into this one, adding them up.
+     *
+     * @param other a builder of n-grams of the same sizes, which is left empty
+     * @see GramTreeBuilder#merge(GramTreeBuilder)
+     */
+    public void merge(HashGramTreeBuilder other) {
+        if (built || other.built) throw new IllegalStateException("N-Gram tree has already been built");
+        if (other.min != min || other.max != max) {
+            throw new IllegalArgumentException("Cannot merge n-grams of sizes " + other.min + "-" + other.max + " into " + min + "-" + max);
+        }
+        if (other == this) return;
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != 0) add(other.keys[i], other.counts[i]);
+        }
+        gramcount += other.gramcount;
+        runs.addAll(other.runs);
+        other.runs.clear();
+        other.keys = new long[1 << INITIAL_BITS];
+        other.counts = new int[1 << INITIAL_BITS];
+        other.bits = INITIAL_BITS;
+        other.size = 0;
+        other.gramcount = 0;
+    }
+
+    /**
+     * @return the number of distinct n-grams learnt so far
+     */
+    public int getGramKinds() {
+        return size;
+    }
+
+    private void add(long key, int count) {
+        final int mask = keys.length - 1;
+        int slot = slot(key, bits);
+        while (true) {
+            final long k = keys[slot];
+            if (k == key) {
+                if (counts[slot] > Integer.MAX_VALUE - count) {
+                    throw new LearningException("Maximum frequency is reached. N-Gram is too frequent in the corpus. Try to use a smaller corpus.");
+                }
+                counts[slot] += count;
+                return;
+            }
+            if (k == 0) {
+                keys[slot] = key;
+                counts[slot] = count;
+                if (++size > (keys.length >> 1) + (keys.length >> 2)) {
+                    if (!built && ((long) keys.length << 1) * SLOT_BYTES > memoryBudget) {
+                        try {
+                            spill();
+                        } catch (IOException e) {
+                            throw new LearningException("Unable to spill n-gram counts", e);
+                        }
+                    } else {
+                        grow();
+                    }
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int find(long key) {
+        final int mask = keys.length - 1;
+        int slot = slot(key, bits);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        final long[] oldKeys = keys;
+        final int[] oldCounts = counts;
+        bits++;
+        keys = new long[1 << bits];
+        counts = new int[1 << bits];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) add(oldKeys[i], oldCounts[i]);
+        }
+    }
+
+    private static int slot(long key, int bits) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+    }
+
+    /**
+     * Converts the counts to an immutable gram tree. As with {@link GramTreeBuilder#build()}, the prefixes of the
+     * learnt n-grams which are shorter than the minimal size are nodes of frequency 0, and n-grams less frequent than
+     * the frequency found at the truncation threshold are discarded along with the longer n-grams they prefix.
+     * <p>
+     * If counts have been spilled to disk, they are merged back, then the spill files are deleted, even if the merge
+     * fails. A builder which is not built must be {@link #discard() discarded} to delete them.
+     *
+     * @return an immutable gram tree
+     */
+    public CompiledGramTree build() {
+        if (built) throw new IllegalStateException("N-Gram tree has already been built");
+        built = true;
+        final Levels levels;
+        try {
+            levels = runs.isEmpty() ? collect() : collectRuns();
+        } catch (IOException e) {
+            throw new LearningException("Unable to read spilled n-gram counts", e);
+        } finally {
+            release();
+        }
+        return levels.compile(min, max, gramcount);
+    }
+
+    /**
+     * Deletes the counts spilled to disk by a builder which will not be built, for instance because learning failed.
+     * The builder cannot be used anymore.
+     */
+    public void discard() {
+        built = true;
+        release();
+    }
+
+    private void release() {
+        for (Run run : runs) {
+            run.file.delete();
+        }
+        runs.clear();
+        keys = null;
+        counts = null;
+    }
+
+    /**
+     * Collects the n-grams kept after truncation from the hash table.
+     */
+    private Levels collect() {
+        // nodes for the prefixes shorter than the minimal size
+        for (int length = min; length > 1; length--) {
+            final long[] grams = keys(length);
+            for (long key : grams) {
+                if (find(key >>> CHAR_BITS) < 0) add(key >>> CHAR_BITS, 0);
+            }
+        }
+        // truncation threshold, computed from the frequencies of all the nodes including the root
+        final int[] freqs = new int[size + 1];
+        for (int i = 0, n = 1; i < keys.length; i++) {
+            if (keys[i] != 0) freqs[n++] = counts[i];
+        }
+        Arrays.sort(freqs);
+        final int minFreq = freqs[(int) (freqs.length * (1.0 - truncationThreshold))];
+        final long[] kept = new long[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0 && counts[i] >= minFreq) kept[count++] = keys[i];
+        }
+        // keys grow with the depth of the n-grams, and at a given depth, with their lexical order
+        Arrays.sort(kept, 0, count);
+        final Levels levels = new Levels(max);
+        for (int i = 0; i < count; i++) {
+            levels.add(kept[i], counts[find(kept[i])]);
+        }
+        return levels;
+    }
+
+    /**
+     * Collects the n-grams kept after truncation from the spilled runs, in two merges of the runs : the first one
+     * computes the histogram of the frequencies, from which the truncation threshold is found, and the second one
+     * keeps the frequent n-grams.
+     */
+    private Levels collectRuns() throws IOException {
+        spill();
+        final Histogram histogram = new Histogram();
+        final long[] lastPrefixes = new long[min];
+        long nodes = 1;
+        long zeros = 1;
+        RunMerger merger = new RunMerger(runs);
+        while (merger.next()) {
+            final long key = merger.key;
+            histogram.add(merger.count);
+            nodes++;
+            if (depth(key) == min) zeros += countPrefixes(key, lastPrefixes, null);
+        }
+        merger.close();
+        nodes += zeros - 1;
+        histogram.addZeros(zeros);
+        // the frequency found at the truncation threshold in the sorted frequencies of all the nodes
+        final long index = (long) (nodes * (1.0 - truncationThreshold));
+        if (index >= nodes) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + nodes);
+        final int minFreq = histogram.get(index);
+        final Levels levels = new Levels(max);
+        Arrays.fill(lastPrefixes, 0);
+        merger = new RunMerger(runs);
+        while (merger.next()) {
+            final long key = merger.key;
+            if (minFreq <= 0 && depth(key) == min) countPrefixes(key, lastPrefixes, levels);
+            if (merger.count >= minFreq) levels.add(key, merger.count);
+        }
+        merger.close();
+        return levels;
+    }
+
+    /**
+     * Counts the nodes of each frequency, without an object per frequency. Low frequencies, which most n-grams have,
+     * are counted in an array indexed by frequency. Higher ones are listed and sorted when needed : each of them stands
+     * for at least {@link #DENSE} n-grams learnt, so there are few of them.
+     */
+    private static class Histogram {
+        private static final int DENSE = 4096;
+
+        private final long[] counts = new long[DENSE];
+        private int[] frequent = new int[64];
+        private int frequentCount;
+
+        private void add(int freq) {
+            if (freq < DENSE) {
+                counts[freq]++;
+            } else {
+                if (frequentCount == frequent.length) frequent = Arrays.copyOf(frequent, 2 * frequentCount);
+                frequent[frequentCount++] = freq;
+            }
+        }
+
+        private void addZeros(long count) {
+            counts[0] += count;
+        }
+
+        /**
+         * @param index an index lower than the number of frequencies added
+         * @return the frequency found at this index once all the frequencies are sorted
+         */
+        private int get(long index) {
+            long seen = 0;
+            for (int freq = 0; freq < DENSE; freq++) {
+                seen += counts[freq];
+                if (seen > index) return freq;
+            }
+            Arrays.sort(frequent, 0, frequentCount);
+            return frequent[(int) (index - seen)];
+        }
+    }
+
+    /**
+     * Counts the prefixes shorter than the minimal size of an n-gram of the minimal size, which have not been seen
+     * with the previous n-grams.
+     *
+     * @param key          an n-gram of the minimal size, greater than the previous ones
+     * @param lastPrefixes the last prefix seen for each size, updated
+     * @param levels       if not null, receives the new prefixes
+     * @return the number of new prefixes
+     */
+    private int countPrefixes(long key, long[] lastPrefixes, Levels levels) {
+        int count = 0;
+        for (int length = 1; length < min; length++) {
+            final long prefix = key >>> (CHAR_BITS * (min - length));
+            if (prefix != lastPrefixes[length]) {
+                lastPrefixes[length] = prefix;
+                if (levels != null) levels.add(prefix, 0);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the counts of the hash table, sorted by key, to a temporary file, and empties the table.
+     */
+    private void spill() throws IOException {
+        final long[] sorted = keys(0);
+        Arrays.sort(sorted);
+        final File file = File.createTempFile("ngrams", ".run", spillDirectory);
+        boolean written = false;
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                for (long key : sorted) {
+                    out.writeLong(key);
+                    out.writeInt(counts[find(key)]);
+                }
+            } finally {
+                out.close();
+            }
+            written = true;
+        } finally {
+            if (!written) file.delete();
+        }
+        runs.add(new Run(file, sorted.length));
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+
+    /**
+     * @param length the length of the n-grams, or 0 for all of them
+     * @return the keys of the n-grams of the hash table
+     */
+    private long[] keys(int length) {
+        int count = 0;
+        for (long key : keys) {
+            if (key != 0 && (length == 0 || depth(key) == length)) count++;
+        }
+        final long[] result = new long[count];
+        count = 0;
+        for (long key : keys) {
+            if (key != 0 && (length == 0 || depth(key) == length)) result[count++] = key;
+        }
+        return result;
+    }
+
+    private static int depth(long key) {
+        return (64 - Long.numberOfLeadingZeros(key) + CHAR_BITS - 1) / CHAR_BITS;
+    }
+
+    /**
+     * The n-grams kept after truncation, by size, each size being sorted in lexical order.
+     */
+    private static class Levels {
+        private final long[][] keys;
+        private final int[][] freqs;
+        private final int[] sizes;
+
+        private Levels(int max) {
+            keys = new long[max + 1][];
+            freqs = new int[max + 1][];
+            sizes = new int[max + 1];
+            keys[0] = new long[] {0};
+            freqs[0] = new int[] {0};
+            sizes[0] = 1;
+            for (int d = 1; d <= max; d++) {
+                keys[d] = new long[16];
+                freqs[d] = new int[16];
+            }
+        }
+
+        private void add(long key, int freq) {
+            final int d = depth(key);
+            if (sizes[d] == keys[d].length) {
+                keys[d] = Arrays.copyOf(keys[d], sizes[d] << 1);
+                freqs[d] = Arrays.copyOf(freqs[d], sizes[d] << 1);
+            }
+            keys[d][sizes[d]] = key;
+            freqs[d][sizes[d]++] = freq;
+        }
+
+        /**
+         * Drops the n-grams whose prefix has been truncated, and lays out the others as a {@link FlatTrie}. Sorting
+         * each size in lexical order gives the breadth-first order of the tree.
+         */
+        private CompiledGramTree compile(int min, int max, long gramcount) {
+            int nodeCount = 1;
+            for (int d = 1; d <= max; d++) {
+                int kept = 0;
+                int parent = 0;
+                for (int i = 0; i < sizes[d]; i++) {
+                    final long prefix = keys[d][i] >>> CHAR_BITS;
+                    while (parent < sizes[d - 1] && keys[d - 1][parent] < prefix) parent++;
+                    if (parent < sizes[d - 1] && keys[d - 1][parent] == prefix) {
+                        keys[d][kept] = keys[d][i];
+                        freqs[d][kept] = freqs[d][i];
+                        kept++;
+                    }
+                }
+                sizes[d] = kept;
+                nodeCount += kept;
+            }
+            final char[] labels = new char[nodeCount];
+            final int[] children = new int[nodeCount + 1];
+            final float[] scores = new float[nodeCount];
+            final double norm = Math.log(gramcount);
+            scores[0] = (float) (Math.log(freqs[0][0]) / norm);
+            int node = 1;
+            int parentNode = 0;
+            for (int d = 1; d <= max; d++) {
+                int parent = 0;
+                children[parentNode] = node;
+                for (int i = 0; i < sizes[d]; i++) {
+                    final long key = keys[d][i];
+                    labels[node] = (char) ((key & CHAR_MASK) - 1);
+                    scores[node] = (float) (Math.log(freqs[d][i]) / norm);
+                    // the children of the parents preceding the prefix of this n-gram start here
+                    while (keys[d - 1][parent] != key >>> CHAR_BITS) {
+                        parent++;
+                        children[parentNode + parent] = node;
+                    }
+                    node++;
+                }
+                for (parent++; parent < sizes[d - 1]; parent++) {
+                    children[parentNode + parent] = node;
+                }
+                parentNode += sizes[d - 1];
+            }
+            for (int leaf = parentNode; leaf <= nodeCount; leaf++) {
+                children[leaf] = nodeCount;
+            }
+            return new CompiledGramTree(new FlatTrie(labels, children), scores, min, max, gramcount);
+        }
+    }
+
+    /**
+     * A file of counts sorted by key.
+     */
+    private static class Run {
+        private final File file;
+        private final long entries;
+
+        private Run(final File file, final long entries) {
+            this.file = file;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * Reads the counts of a run, in order.
+     */
+    private static class RunReader implements Comparable<RunReader> {
+        private final DataInputStream in;
+        private long remaining;
+        private long key;
+        private int count;
+
+        private RunReader(final Run run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run.file)));
+            remaining = run.entries;
+        }
+
+        private boolean next() throws IOException {
+            if (remaining == 0) return false;
+            key = in.readLong();
+            count = in.readInt();
+            remaining--;
+            return true;
+        }
+
+        public int compareTo(final RunReader o) {
+            return key < o.key ? -1 : (key == o.key ? 0 : 1);
+        }
+    }
+
+    /**
+     * Merges sorted runs, adding up the counts of the n-grams found in several runs.
+     */
+    private static class RunMerger {
+        private final PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+        private long key;
+        private int count;
+
+        private RunMerger(final List<Run> runs) throws IOException {
+            for (Run run : runs) {
+                advance(new RunReader(run));
+            }
+        }
+
+        private boolean next() throws IOException {
+            if (queue.isEmpty()) return false;
+            final RunReader head = queue.poll();
+            key = head.key;
+            long total = head.count;
+            advance(head);
+            while (!queue.isEmpty() && queue.peek().key == key) {
+                final RunReader reader = queue.poll();
+                total += reader.count;
+                advance(reader);
+            }
+            if (total > Integer.MAX_VALUE) {
+                throw new LearningException("Maximum frequency is reached. N-Gram is too frequent in the corpus. Try to use a smaller corpus.");
+            }
+            count = (int) total;
+            return true;
+        }
+
+        private void advance(RunReader reader) throws IOException {
+            if (reader.next()) {
+                queue.add(reader);
+            } else {
+                reader.in.close();
+            }
+        }
+
+        private void close() throws IOException {
+            for (RunReader reader : queue) {
+                reader.in.close();
+            }
+        }
+    }
+}
@@ -23,8 +23,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class wraps several n-gram trees in order to detect languages. The detection algorithm is really simple : it
@@ -32,29 +42,67 @@ import java.util.*;
  * <p>
  * Such an algorithm requires that the corpus used for training look as identical as possible. Parallel corpus are good
  * candidates.
+ * <p>
+ * Detectors are safe for concurrent use. The registered profiles are held in an immutable snapshot which registrations
+ * replace as a whole, so that a detection always sees a consistent set of languages. Once the profiles involved in a
+ * detection are loaded, detecting does not take any lock. Detectors created with a {@link Builder} are immutable :
+ * their languages are fixed when built, and registering a language throws an {@link IllegalStateException}.
  *
  */
 public class LangDetector {
 	private final static Logger theLogger = LoggerFactory.getLogger(LangDetector.class);
+	private final static int STREAM_CHUNK_SIZE = 8192;
 	
-	private Map<String, AbstractGramTree> statsMap = new HashMap<String, AbstractGramTree>();
+	// replaced as a whole, under the lock of this detector
+	private volatile Profiles profiles;
+	private final boolean immutable;
+	private volatile DetectionListener listener;
 
 	public LangDetector() {
+		this(Profiles.EMPTY, false);
 	}
 
     /**
-     * Creates a language detector using the same language profiles as the provided detector.
+     * Creates a language detector using the same language profiles as the provided detector. Profiles which have not
+     * been loaded yet are shared, so that they are loaded at most once.
      * @param other the detector from which copy resources from.
      */
     protected LangDetector(LangDetector other) {
-        for (Map.Entry<String, AbstractGramTree> entry : other.statsMap.entrySet()) {
-            statsMap.put(entry.getKey(), entry.getValue());
-        }
+        this(other.profiles, false);
+    }
+
+    /**
+     * Creates an immutable language detector using the profiles registered in the provided builder.
+     * @param builder the builder from which copy resources from.
+     */
+    protected LangDetector(Builder builder) {
+        this(new Profiles(builder.trees, builder.pending), true);
+    }
+
+    LangDetector(Profiles profiles, boolean immutable) {
+        this.profiles = profiles;
+        this.immutable = immutable;
     }
 
+    /**
+     * @return a builder of immutable language detectors
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Registers a profile serialized by previous versions.
+     *
+     * @param lang the language
+     * @param in   the stream the profile is serialized in, which is closed once read
+     * @deprecated the bundled profiles are now in the {@link ProfileFormat} binary format, which an
+     * {@link ObjectInputStream} cannot be created on. Use {@link #register(String, InputStream)}, which reads both.
+     */
+    @Deprecated
     public void register(String lang, ObjectInputStream in) {
 		try {
-			statsMap.put(lang, (AbstractGramTree) in.readObject());
+			register(lang, (AbstractGramTree) in.readObject());
 			in.close();
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -63,8 +111,164 @@ public class LangDetector {
 		}
 	}
 
-	public void register(String lang, AbstractGramTree tree) {
-		statsMap.put(lang, tree);
+	/**
+	 * Registers a profile read from a stream, in any of the formats supported by {@link ProfileFormat#load(InputStream)}.
+	 *
+	 * @param lang the language
+	 * @param in   the stream to read the profile from, which is closed once read
+	 * @throws IOException if the profile cannot be read
+	 */
+	public void register(String lang, InputStream in) throws IOException {
+		register(lang, ProfileFormat.load(in));
+	}
+
+	public synchronized void register(String lang, AbstractGramTree tree) {
+		checkMutable();
+		final Profiles current = profiles;
+		final Map<String, AbstractGramTree> trees = new HashMap<String, AbstractGramTree>(current.trees);
+		final Map<String, LazyProfile> pending = new HashMap<String, LazyProfile>(current.pending);
+		trees.put(lang, tree);
+		pending.remove(lang);
+		profiles = new Profiles(trees, pending);
+	}
+
+	/**
+	 * Registers a language whose profile is only loaded the first time a detection involves this language. Loading is
+	 * thread-safe. If the profile cannot be loaded, the language is unregistered.
+	 *
+	 * @param lang   the language
+	 * @param loader loads the language profile
+	 * @see #warmUp()
+	 */
+	public synchronized void register(String lang, ProfileLoader loader) {
+		checkMutable();
+		final Profiles current = profiles;
+		final Map<String, AbstractGramTree> trees = new HashMap<String, AbstractGramTree>(current.trees);
+		final Map<String, LazyProfile> pending = new HashMap<String, LazyProfile>(current.pending);
+		trees.remove(lang);
+		pending.put(lang, new LazyProfile(loader));
+		profiles = new Profiles(trees, pending);
+	}
+
+	private void checkMutable() {
+		if (immutable) throw new IllegalStateException("Cannot add languages to an immutable detector");
+	}
+
+	/**
+	 * Loads the profiles of all the registered languages and prepares the detector, so that no detection pays for
+	 * it. Useful for latency-sensitive services.
+	 */
+	public void warmUp() {
+		warmUp(profiles.languages);
+	}
+
+	/**
+	 * Loads the profiles of the provided languages and prepares the detector, so that no detection restricted to
+	 * these languages pays for it.
+	 *
+	 * @param languageRestrictions the languages to be loaded
+	 */
+	public void warmUp(Set<String> languageRestrictions) {
+		getMultiGramTree(languageRestrictions);
+	}
+
+	/**
+	 * Sets the listener notified of each detection, for example a {@link DetectionMetrics}. Detections only measure
+	 * themselves when a listener is set. The listener is called from the detecting threads, and is not part of the
+	 * profiles : it can be set on immutable detectors too.
+	 *
+	 * @param listener the listener, or null to stop notifying detections
+	 */
+	public void setDetectionListener(DetectionListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return the listener notified of each detection, or null
+	 */
+	DetectionListener getDetectionListener() {
+		return listener;
+	}
+
+	/**
+	 * @return the registered languages, whether their profile is loaded or not
+	 */
+	public Set<String> getLanguages() {
+		return profiles.languages;
+	}
+
+	/**
+	 * @return the current profiles, as registered
+	 */
+	Profiles getProfiles() {
+		return profiles;
+	}
+
+	/**
+	 * @return the current profiles, all of them being loaded
+	 */
+	Profiles getLoadedProfiles() {
+		getMultiGramTree(profiles.languages);
+		return profiles;
+	}
+
+	/**
+	 * Replaces the profiles of this detector as a whole.
+	 *
+	 * @param replacement the new profiles
+	 */
+	synchronized void setProfiles(Profiles replacement) {
+		profiles = replacement;
+	}
+
+	/**
+	 * Returns the merged n-gram tree of the registered languages, loading the profiles of the provided languages if
+	 * needed, and building the tree if a language has been registered or loaded since the last call.
+	 *
+	 * @param languageRestrictions the languages which are going to be scored
+	 * @return the merged tree
+	 */
+	private MultiGramTree getMultiGramTree(Set<String> languageRestrictions) {
+		final Profiles current = profiles;
+		if (current.multiGramTree != null && !current.isPending(languageRestrictions)) {
+			return current.multiGramTree;
+		}
+		synchronized (this) {
+			Profiles prepared = profiles;
+			if (prepared.isPending(languageRestrictions)) {
+				final Map<String, AbstractGramTree> trees = new HashMap<String, AbstractGramTree>(prepared.trees);
+				final Map<String, LazyProfile> pending = new HashMap<String, LazyProfile>(prepared.pending);
+				for (Map.Entry<String, LazyProfile> entry : prepared.pending.entrySet()) {
+					final String lang = entry.getKey();
+					if (languageRestrictions.contains(lang)) {
+						pending.remove(lang);
+						try {
+							trees.put(lang, entry.getValue().get());
+						} catch (IOException e) {
+							theLogger.warn("Unable to load profile for language " + lang, e);
+						}
+					}
+				}
+				prepared = new Profiles(trees, pending);
+			}
+			if (prepared.multiGramTree == null) {
+				prepared = prepared.withMultiGramTree();
+			}
+			profiles = prepared;
+			return prepared.multiGramTree;
+		}
+	}
+
+	/**
+	 * Same as {@link #getMultiGramTree(Set)}, the restrictions being a mask. Only the languages which have not been
+	 * loaded yet need their name.
+	 */
+	private MultiGramTree getMultiGramTree(LanguageMask languageRestrictions) {
+		final Profiles current = profiles;
+		if (current.multiGramTree != null && !current.isPending(languageRestrictions)) {
+			return current.multiGramTree;
+		}
+		return getMultiGramTree(languageRestrictions.toLanguages());
 	}
 
 	/**
@@ -74,7 +278,7 @@ public class LangDetector {
 	 * @return the detected language
 	 */
 	public String detectLang(CharSequence aText) {
-		return detectLang(aText, statsMap.keySet());
+		return detectLang(aText, profiles.languages);
 	}
 
 	/**
@@ -88,15 +292,301 @@ public class LangDetector {
      * @return the detected language or null if all scores are 0
 	 */
 	public String detectLang(CharSequence aText, Set<String> languageRestrictions) {
+		return detectLang(aText, languageRestrictions, listener);
+	}
+
+	/**
+	 * Same as {@link #detectLang(CharSequence, Set)}, notifying the provided listener instead of the one of this
+	 * detector. Used by detectors which delegate to this one.
+	 */
+	String detectLang(CharSequence aText, Set<String> languageRestrictions, DetectionListener listener) {
+		final MultiGramTree tree = getMultiGramTree(languageRestrictions);
+		final boolean[] active = tree.select(languageRestrictions);
+		final int size = tree.size();
+		return detect(tree, aText, active, new double[size], new int[size], listener == null ? null : new long[size], listener);
+	}
+
+	/**
+	 * Performs a language detection limited to the languages of the provided mask. The result is the same as
+	 * {@link #detectLang(CharSequence, Set)} with the languages of the mask, but the restrictions are tested by id
+	 * rather than hashed.
+	 *
+	 * @param aText                the text for which to detect the language
+	 * @param languageRestrictions the mask of the languages the detector should be limited to
+	 * @return the detected language or null if all scores are 0
+	 */
+	public String detectLang(CharSequence aText, LanguageMask languageRestrictions) {
+		return detectLang(aText, languageRestrictions, listener);
+	}
+
+	/**
+	 * Same as {@link #detectLang(CharSequence, LanguageMask)}, notifying the provided listener instead of the one of
+	 * this detector.
+	 */
+	String detectLang(CharSequence aText, LanguageMask languageRestrictions, DetectionListener listener) {
+		final MultiGramTree tree = getMultiGramTree(languageRestrictions);
+		final int size = tree.size();
+		final boolean[] active = tree.select(languageRestrictions, new boolean[size]);
+		return detect(tree, aText, active, new double[size], new int[size], listener == null ? null : new long[size], listener);
+	}
+
+	/**
+	 * Performs a language detection which reads the text by chunks, and stops as soon as the detected language is
+	 * known with the confidence configured by the provided strategy. Useful for long documents, which are usually
+	 * recognized long before their end.
+	 *
+	 * @param aText                the text for which to detect the language
+	 * @param languageRestrictions the set of languages the detector should be limited to
+	 * @param termination          when to stop reading the text
+	 * @return the detected language, and how much of the text has been read
+	 */
+	public DetectionResult detectLang(CharSequence aText, Set<String> languageRestrictions, EarlyTermination termination) {
+		final DetectionListener listener = this.listener;
+		final long start = listener == null ? 0 : System.nanoTime();
+		final MultiGramTree tree = getMultiGramTree(languageRestrictions);
+		return detected(listener, start, termination.detect(tree, aText, tree.select(languageRestrictions)));
+	}
+
+	/**
+	 * Performs a language detection which only scores windows spread over the text, as configured by the provided
+	 * strategy. Useful to bound the cost of detecting the language of very long texts.
+	 *
+	 * @param aText                the text for which to detect the language
+	 * @param languageRestrictions the set of languages the detector should be limited to
+	 * @param sampling             how to pick the scored windows
+	 * @return the detected language, and how many characters have been scored
+	 */
+	public DetectionResult detectLang(CharSequence aText, Set<String> languageRestrictions, Sampling sampling) {
+		final DetectionListener listener = this.listener;
+		final long start = listener == null ? 0 : System.nanoTime();
+		final MultiGramTree tree = getMultiGramTree(languageRestrictions);
+		return detected(listener, start, sampling.detect(tree, aText, tree.select(languageRestrictions)));
+	}
+
+	/**
+	 * Splits a text written in several languages into contiguous spans of a single language, for example a French
+	 * article quoting English sources.
+	 *
+	 * @param aText                the text to be split
+	 * @param languageRestrictions the set of languages the detector should be limited to
+	 * @param segmentation         how to detect the language of each part of the text
+	 * @return the spans, covering the whole text in order
+	 */
+	public List<LanguageSpan> detectSegments(CharSequence aText, Set<String> languageRestrictions, Segmentation segmentation) {
+		final MultiGramTree tree = getMultiGramTree(languageRestrictions);
+		return segmentation.segment(tree, aText, tree.select(languageRestrictions));
+	}
+
+	/**
+	 * Starts a language detection of a text which is going to be provided piece by piece, for example as it is
+	 * received from the network.
+	 *
+	 * @param languageRestrictions the set of languages the detector should be limited to
+	 * @return the stream to which the text must be appended
+	 */
+	public DetectionStream newDetectionStream(Set<String> languageRestrictions) {
+		final MultiGramTree tree = getMultiGramTree(languageRestrictions);
+		return new DetectionStream(tree, tree.select(languageRestrictions));
+	}
+
+	/**
+	 * Performs a language detection on the text read from the provided reader, in constant memory. The reader is
+	 * read until its end or until the budget is exhausted, and is not closed.
+	 *
+	 * @param reader               the text for which to detect the language
+	 * @param languageRestrictions the set of languages the detector should be limited to
+	 * @param charBudget           the maximal number of characters to be read
+	 * @return the detected language, and how many characters have been read
+	 * @throws IOException if the reader fails
+	 */
+	public DetectionResult detectLang(Reader reader, Set<String> languageRestrictions, long charBudget) throws IOException {
+		final DetectionListener listener = this.listener;
+		final long start = listener == null ? 0 : System.nanoTime();
+		return detected(listener, start, read(reader, newDetectionStream(languageRestrictions), charBudget));
+	}
+
+	private static DetectionResult read(Reader reader, DetectionStream stream, long charBudget) throws IOException {
+		final char[] chars = new char[STREAM_CHUNK_SIZE];
+		long remaining = charBudget;
+		while (remaining > 0) {
+			final int n = reader.read(chars, 0, (int) Math.min(chars.length, remaining));
+			if (n < 0) return stream.finish();
+			stream.append(chars, 0, n);
+			remaining -= n;
+		}
+		return stream.finish(false);
+	}
+
+	/**
+	 * Performs a language detection on the text read from the provided blocking channel, in constant memory. The
+	 * channel is read until its end or until the budget is exhausted, and is not closed. Malformed input is
+	 * replaced.
+	 *
+	 * @param channel              the text for which to detect the language
+	 * @param charset              the encoding of the text
+	 * @param languageRestrictions the set of languages the detector should be limited to
+	 * @param byteBudget           the maximal number of bytes to be read
+	 * @return the detected language, and how many characters have been decoded
+	 * @throws IOException if the channel fails
+	 */
+	public DetectionResult detectLang(ReadableByteChannel channel, Charset charset, Set<String> languageRestrictions,
+									  long byteBudget) throws IOException {
+		final DetectionListener listener = this.listener;
+		final long start = listener == null ? 0 : System.nanoTime();
+		return detected(listener, start, read(channel, charset, newDetectionStream(languageRestrictions), byteBudget));
+	}
+
+	private static DetectionResult read(ReadableByteChannel channel, Charset charset, DetectionStream stream,
+										long byteBudget) throws IOException {
+		final CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		final ByteBuffer bytes = ByteBuffer.allocate(STREAM_CHUNK_SIZE);
+		final CharBuffer chars = CharBuffer.allocate(STREAM_CHUNK_SIZE);
+		long remaining = byteBudget;
+		boolean eof = false;
+		while (!eof && remaining > 0) {
+			bytes.limit(bytes.position() + (int) Math.min(bytes.remaining(), remaining));
+			final int n = channel.read(bytes);
+			if (n < 0) {
+				eof = true;
+			} else {
+				remaining -= n;
+			}
+			bytes.flip();
+			CoderResult result;
+			do {
+				result = decoder.decode(bytes, chars, eof);
+				chars.flip();
+				stream.append(chars);
+				chars.clear();
+			} while (result.isOverflow());
+			bytes.compact();
+		}
+		if (!eof) return stream.finish(false);
+		while (decoder.flush(chars).isOverflow()) {
+			chars.flip();
+			stream.append(chars);
+			chars.clear();
+		}
+		chars.flip();
+		stream.append(chars);
+		return stream.finish();
+	}
+
+	/**
+	 * Performs a language detection on each of the provided documents, using the whole set of possible languages.
+	 * Documents are scored in parallel in the common fork-join pool.
+	 *
+	 * @param texts the documents for which to detect the language
+	 * @return the detected languages, in the order of the documents
+	 * @see #detectLangs(List, Set, ForkJoinPool)
+	 */
+	public List<String> detectLangs(List<? extends CharSequence> texts) {
+		return detectLangs(texts, profiles.languages, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Performs a language detection on each of the provided documents, limiting the detection to the set of provided
+	 * languages. Documents are scored in parallel in the common fork-join pool.
+	 *
+	 * @param texts                the documents for which to detect the language
+	 * @param languageRestrictions the set of languages the detector should be limited to
+	 * @return the detected languages, in the order of the documents
+	 * @see #detectLangs(List, Set, ForkJoinPool)
+	 */
+	public List<String> detectLangs(List<? extends CharSequence> texts, Set<String> languageRestrictions) {
+		return detectLangs(texts, languageRestrictions, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Performs a language detection on each of the provided documents, limiting the detection to the set of provided
+	 * languages. The documents are split between the workers of the provided pool, each of them reusing its scoring
+	 * buffers from one document to the other. The result is the same as calling {@link #detectLang(CharSequence, Set)}
+	 * on each document.
+	 * <p>
+	 * The list should support random access. Very large collections are best processed by successive batches.
+	 *
+	 * @param texts                the documents for which to detect the language
+	 * @param languageRestrictions the set of languages the detector should be limited to
+	 * @param pool                 the pool in which documents are scored
+	 * @return the detected languages, in the order of the documents, null for documents with all scores being 0
+	 */
+	public List<String> detectLangs(List<? extends CharSequence> texts, Set<String> languageRestrictions, ForkJoinPool pool) {
+		return detectLangs(texts, languageRestrictions, pool, listener);
+	}
+
+	/**
+	 * Same as {@link #detectLangs(List, Set, ForkJoinPool)}, notifying the provided listener instead of the one of
+	 * this detector.
+	 */
+	List<String> detectLangs(List<? extends CharSequence> texts, Set<String> languageRestrictions, ForkJoinPool pool,
+							 DetectionListener listener) {
+		final MultiGramTree tree = getMultiGramTree(languageRestrictions);
+		final boolean[] active = tree.select(languageRestrictions);
+		final String[] results = new String[texts.size()];
+		if (results.length > 0) {
+			final int leafSize = BatchDetection.leafSize(results.length, pool.getParallelism());
+			pool.invoke(new BatchDetection(tree, active, texts, results, 0, results.length, leafSize, listener));
+		}
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Scores a text and returns the active language with the best score. If a listener is provided, the detection is
+	 * measured and the n-grams found in each profile are counted.
+	 *
+	 * @param tree         the merged tree of the languages
+	 * @param text         the text for which to detect the language
+	 * @param active       the languages to be scored
+	 * @param scores       scratch buffer receiving the score of each language
+	 * @param effectiveMax scratch buffer, of the size of the tree
+	 * @param hits         scratch buffer, of the size of the tree, only used if there is a listener
+	 * @param listener     the listener to be notified, or null
+	 * @return the language with the best score, or null if all scores are 0
+	 */
+	static String detect(MultiGramTree tree, CharSequence text, boolean[] active, double[] scores, int[] effectiveMax,
+						 long[] hits, DetectionListener listener) {
+		if (listener == null) {
+			tree.scoreText(text, active, scores, effectiveMax);
+			return bestLanguage(tree, active, scores);
+		}
+		final long start = System.nanoTime();
+		tree.scoreText(text, active, scores, effectiveMax, hits);
+		final String language = bestLanguage(tree, active, scores);
+		final long nanos = System.nanoTime() - start;
+		final int length = text.length();
+		for (int i = 0; i < active.length; i++) {
+			if (active[i] && tree.isMerged(i)) {
+				listener.scored(tree.getLanguage(i), hits[i], tree.gramCount(i, length, effectiveMax) - hits[i]);
+			}
+		}
+		listener.detected(language, length, nanos);
+		return language;
+	}
+
+	private static DetectionResult detected(DetectionListener listener, long start, DetectionResult result) {
+		if (listener != null) {
+			listener.detected(result.getLanguage(), result.getConsumed(), System.nanoTime() - start);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the active language with the best score.
+	 *
+	 * @param tree   the tree which computed the scores
+	 * @param active the languages which have been scored
+	 * @param scores the score of each language
+	 * @return the language with the best score, or null if all scores are 0
+	 */
+	static String bestLanguage(MultiGramTree tree, boolean[] active, double[] scores) {
 		double best = 0;
 		String bestLang = null;
-		for (Map.Entry<String, AbstractGramTree> entry : statsMap.entrySet()) {
-			final String currentLanguage = entry.getKey();
-			if (languageRestrictions.contains(currentLanguage)) {
-				if (theLogger.isDebugEnabled()) {
-					theLogger.debug("---------- testing : " + currentLanguage + " -------------");
-				}
-				double score = entry.getValue().scoreText(aText);
+		for (int i = 0; i < scores.length; i++) {
+			if (active[i]) {
+				final String currentLanguage = tree.getLanguage(i);
+				final double score = scores[i];
 				if (theLogger.isDebugEnabled()) {
 					theLogger.debug("---------- result : " + currentLanguage + " : " + score + " -------------");
 				}
@@ -118,14 +608,46 @@ public class LangDetector {
      * @return the scores for each language, sorted by descending score
      */
     public Collection<Score> scoreLanguages(CharSequence aText, Set<String> languageRestrictions) {
-        List<Score> scores = new LinkedList<Score>();
-        for (Map.Entry<String, AbstractGramTree> entry : statsMap.entrySet()) {
-            final String currentLanguage = entry.getKey();
-            if (languageRestrictions.contains(currentLanguage)) {
-                scores.add(new Score(currentLanguage,entry.getValue().scoreText(aText)));
-            }
+        final LanguageScores values = scoreLanguages(aText, languageRestrictions, new LanguageScores());
+        final int count = values.top(values.size());
+        List<Score> scores = new ArrayList<Score>(count);
+        for (int i = 0; i < count; i++) {
+            scores.add(new Score(values.getTopLanguage(i), values.getTopScore(i)));
         }
-        Collections.sort(scores);
+        return scores;
+    }
+
+    /**
+     * Computes the scores of each language profile for the given input text into the provided holder, which can be
+     * reused so that scoring many texts does not allocate. The best languages are then ranked with
+     * {@link LanguageScores#top(int)}.
+     * @param aText the text for which to detect score
+     * @param languageRestrictions the list of languages to be tested
+     * @param scores the holder receiving the scores, whose previous content is replaced
+     * @return the holder
+     */
+    public LanguageScores scoreLanguages(CharSequence aText, Set<String> languageRestrictions, LanguageScores scores) {
+        final MultiGramTree tree = getMultiGramTree(languageRestrictions);
+        scores.prepare(tree.size());
+        tree.select(languageRestrictions, scores.active);
+        tree.scoreText(aText, scores.active, scores.scores, scores.effectiveMax);
+        scores.collect(tree);
+        return scores;
+    }
+
+    /**
+     * Same as {@link #scoreLanguages(CharSequence, Set, LanguageScores)}, the restrictions being a mask.
+     * @param aText the text for which to detect score
+     * @param languageRestrictions the mask of the languages to be tested
+     * @param scores the holder receiving the scores, whose previous content is replaced
+     * @return the holder
+     */
+    public LanguageScores scoreLanguages(CharSequence aText, LanguageMask languageRestrictions, LanguageScores scores) {
+        final MultiGramTree tree = getMultiGramTree(languageRestrictions);
+        scores.prepare(tree.size());
+        tree.select(languageRestrictions, scores.active);
+        tree.scoreText(aText, scores.active, scores.scores, scores.effectiveMax);
+        scores.collect(tree);
         return scores;
     }
 
@@ -136,7 +658,139 @@ public class LangDetector {
      * @return the scores for each language, sorted by descending score
      */
     public Collection<Score> scoreLanguages(CharSequence aText) {
-        return scoreLanguages(aText, statsMap.keySet());
+        return scoreLanguages(aText, profiles.languages);
+    }
+
+    /**
+     * Builds immutable language detectors. Builders are not thread-safe, but the detectors they build are, and
+     * building a detector copies the registered profiles, so that the builder can go on being used.
+     */
+    public static class Builder {
+        private final Map<String, AbstractGramTree> trees = new HashMap<String, AbstractGramTree>();
+        private final Map<String, LazyProfile> pending = new HashMap<String, LazyProfile>();
+
+        private Builder() {
+        }
+
+        public Builder register(String lang, AbstractGramTree tree) {
+            trees.put(lang, tree);
+            pending.remove(lang);
+            return this;
+        }
+
+        /**
+         * Registers a language whose profile is only loaded the first time a detection involves this language.
+         *
+         * @param lang   the language
+         * @param loader loads the language profile
+         * @return this builder
+         * @see LangDetector#register(String, ProfileLoader)
+         */
+        public Builder register(String lang, ProfileLoader loader) {
+            trees.remove(lang);
+            pending.put(lang, new LazyProfile(loader));
+            return this;
+        }
+
+        /**
+         * Registers the languages of another detector. Its profiles which have not been loaded yet are shared.
+         *
+         * @param detector the detector from which copy resources from
+         * @return this builder
+         */
+        public Builder registerAll(LangDetector detector) {
+            final Profiles other = detector.profiles;
+            for (Map.Entry<String, AbstractGramTree> entry : other.trees.entrySet()) {
+                register(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, LazyProfile> entry : other.pending.entrySet()) {
+                trees.remove(entry.getKey());
+                pending.put(entry.getKey(), entry.getValue());
+            }
+            return this;
+        }
+
+        /**
+         * @return an immutable detector of the languages registered so far
+         */
+        public LangDetector build() {
+            return new LangDetector(this);
+        }
+    }
+
+    /**
+     * An immutable snapshot of the profiles of a detector.
+     */
+    static class Profiles {
+        private final static Profiles EMPTY = new Profiles(
+                Collections.<String, AbstractGramTree>emptyMap(), Collections.<String, LazyProfile>emptyMap());
+
+        private final Map<String, AbstractGramTree> trees;
+        private final Map<String, LazyProfile> pending;
+        private final Set<String> languages;
+        private final LanguageMask pendingMask;
+        private final MultiGramTree multiGramTree;
+
+        private Profiles(Map<String, AbstractGramTree> trees, Map<String, LazyProfile> pending) {
+            this(new HashMap<String, AbstractGramTree>(trees), new HashMap<String, LazyProfile>(pending), null);
+        }
+
+        private Profiles(Map<String, AbstractGramTree> trees, Map<String, LazyProfile> pending, MultiGramTree multiGramTree) {
+            this.trees = trees;
+            this.pending = pending;
+            final Set<String> languages = new HashSet<String>(trees.keySet());
+            languages.addAll(pending.keySet());
+            // registered languages are given an id, so that masks can be built for them
+            for (String lang : languages) {
+                LanguageIds.idOf(lang);
+            }
+            this.languages = Collections.unmodifiableSet(languages);
+            this.pendingMask = LanguageMask.of(pending.keySet());
+            this.multiGramTree = multiGramTree;
+        }
+
+        private boolean isPending(Set<String> languageRestrictions) {
+            if (pending.isEmpty()) return false;
+            for (String lang : pending.keySet()) {
+                if (languageRestrictions.contains(lang)) return true;
+            }
+            return false;
+        }
+
+        private boolean isPending(LanguageMask languageRestrictions) {
+            return pendingMask.intersects(languageRestrictions);
+        }
+
+        private Profiles withMultiGramTree() {
+            final String[] languages = new String[trees.size()];
+            final AbstractGramTree[] profiles = new AbstractGramTree[trees.size()];
+            int i = 0;
+            for (Map.Entry<String, AbstractGramTree> entry : trees.entrySet()) {
+                languages[i] = entry.getKey();
+                profiles[i] = entry.getValue();
+                i++;
+            }
+            return new Profiles(trees, pending, new MultiGramTree(languages, profiles));
+        }
+    }
+
+    /**
+     * A profile registered with a {@link ProfileLoader}, loaded once. It may be shared by several detectors.
+     */
+    private static class LazyProfile {
+        private final ProfileLoader loader;
+        private AbstractGramTree tree;
+
+        private LazyProfile(final ProfileLoader loader) {
+            this.loader = loader;
+        }
+
+        private synchronized AbstractGramTree get() throws IOException {
+            if (tree == null) {
+                tree = loader.load();
+            }
+            return tree;
+        }
     }
 
     public static class Score implements Comparable<Score> {
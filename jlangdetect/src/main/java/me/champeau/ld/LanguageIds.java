@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Assigns dense integer ids to language names, from 0 in the order they are first registered. Ids are interned for
+ * the whole JVM : a language keeps its id whatever the detector, so that ids, and the {@link LanguageMask masks} built
+ * from them, can be computed once and used with any detector. Ids can also index arrays of per-language state.
+ * <p>
+ * Only the languages registered in detectors are given an id, so the number of ids is bounded by the number of
+ * languages profiles exist for, whatever the restrictions callers provide.
+ * <p>
+ * Thread-safe.
+ */
+public final class LanguageIds {
+    private static final ConcurrentMap<String, Integer> IDS = new ConcurrentHashMap<String, Integer>();
+    // grown by doubling, the names below count being immutable
+    private static volatile String[] names = new String[16];
+    private static volatile int count;
+
+    private LanguageIds() {
+    }
+
+    /**
+     * Returns the id of a language, assigning the next id if the language has never been registered. Called when
+     * languages are registered in detectors.
+     *
+     * @param language the language
+     * @return its id
+     */
+    static int idOf(String language) {
+        final Integer id = IDS.get(language);
+        return id != null ? id : intern(language);
+    }
+
+    /**
+     * Returns the id of a language, without assigning one.
+     *
+     * @param language the language
+     * @return its id, or -1 if the language has never been registered
+     */
+    public static int find(String language) {
+        final Integer id = IDS.get(language);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @param id the id of a language
+     * @return the language
+     */
+    public static String nameOf(int id) {
+        // count is read first, so that the names read hold at least count names
+        if (id < 0 || id >= count) {
+            throw new IllegalArgumentException("Unknown language id " + id);
+        }
+        return names[id];
+    }
+
+    /**
+     * @return the number of ids assigned so far, all ids being lower
+     */
+    public static int count() {
+        return count;
+    }
+
+    private static synchronized int intern(String language) {
+        final Integer existing = IDS.get(language);
+        if (existing != null) return existing;
+        final int id = count;
+        if (id == names.length) names = Arrays.copyOf(names, 2 * id);
+        names[id] = language;
+        // the name is published before the id, so that any id found has a name
+        count = id + 1;
+        IDS.put(language, id);
+        return id;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An immutable set of languages, stored as a bitset indexed by {@link LanguageIds language ids}. Detections restricted
+ * by a mask test each language with a single bit lookup instead of hashing its name, so that callers detecting many
+ * texts with the same restrictions, like per-tenant languages, should build their masks once.
+ * <p>
+ * As ids are shared by all detectors, a mask can be used with any of them. Languages which are not registered in a
+ * detector are ignored, like in the restriction sets. Languages which have not been registered in any detector yet
+ * have no id, and are left out of the masks : masks should be built once the detectors have been created.
+ */
+public final class LanguageMask {
+    private final long[] bits;
+
+    private LanguageMask(long[] bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * @param languages the languages of the mask
+     * @return a mask of the provided languages, leaving out those which have never been registered
+     */
+    public static LanguageMask of(String... languages) {
+        return of(Arrays.asList(languages));
+    }
+
+    /**
+     * @param languages the languages of the mask
+     * @return a mask of the provided languages, leaving out those which have never been registered
+     */
+    public static LanguageMask of(Collection<String> languages) {
+        long[] bits = new long[0];
+        for (String language : languages) {
+            final int id = LanguageIds.find(language);
+            if (id < 0) continue;
+            final int word = id >>> 6;
+            if (word >= bits.length) bits = Arrays.copyOf(bits, word + 1);
+            bits[word] |= 1L << id;
+        }
+        return new LanguageMask(bits);
+    }
+
+    /**
+     * @param id the id of a language
+     * @return true if the language is part of this mask
+     */
+    public boolean contains(int id) {
+        final int word = id >>> 6;
+        return word < bits.length && (bits[word] & (1L << id)) != 0;
+    }
+
+    /**
+     * @param language a language
+     * @return true if the language is part of this mask
+     */
+    public boolean contains(String language) {
+        final int id = LanguageIds.find(language);
+        return id >= 0 && contains(id);
+    }
+
+    /**
+     * @param other another mask
+     * @return true if a language is part of both masks
+     */
+    public boolean intersects(LanguageMask other) {
+        final int length = Math.min(bits.length, other.bits.length);
+        for (int i = 0; i < length; i++) {
+            if ((bits[i] & other.bits[i]) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the languages of this mask
+     */
+    public Set<String> toLanguages() {
+        final Set<String> languages = new HashSet<String>();
+        for (int word = 0; word < bits.length; word++) {
+            long remaining = bits[word];
+            while (remaining != 0) {
+                languages.add(LanguageIds.nameOf((word << 6) + Long.numberOfTrailingZeros(remaining)));
+                remaining &= remaining - 1;
+            }
+        }
+        return Collections.unmodifiableSet(languages);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LanguageMask)) return false;
+        final long[] other = ((LanguageMask) o).bits;
+        final int length = Math.max(bits.length, other.length);
+        for (int i = 0; i < length; i++) {
+            if ((i < bits.length ? bits[i] : 0) != (i < other.length ? other[i] : 0)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // trailing empty words are ignored, like in equals
+        int hash = 0;
+        for (int i = 0; i < bits.length; i++) {
+            if (bits[i] != 0) hash = 31 * hash + (int) (bits[i] ^ (bits[i] >>> 32)) + i;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "LanguageMask" + toLanguages();
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+/**
+ * The scores of a text in several languages, held in primitive arrays. A holder is filled by
+ * {@link LangDetector#scoreLanguages(CharSequence, java.util.Set, LanguageScores)} and can be reused from a text to
+ * another, so that scoring and ranking languages does not allocate once its buffers have grown to the number of
+ * languages of the detector.
+ * <p>
+ * Languages are found in the order of the detector by {@link #getLanguage(int)} and {@link #getScore(int)}. The best
+ * ones are ranked on demand by {@link #top(int)}, without sorting all of them.
+ * <p>
+ * Not thread-safe : each thread should use its own holder.
+ */
+public final class LanguageScores {
+    private String[] languages = new String[0];
+    private double[] values = new double[0];
+    private int size;
+
+    // buffers used while scoring, of the size of the merged tree
+    boolean[] active = new boolean[0];
+    double[] scores = new double[0];
+    int[] effectiveMax = new int[0];
+
+    private int[] ranks = new int[0];
+    private int ranked;
+
+    /**
+     * Prepares the scoring buffers for a tree of the provided size.
+     *
+     * @param count the number of languages of the tree
+     */
+    void prepare(int count) {
+        if (active.length != count) {
+            active = new boolean[count];
+            scores = new double[count];
+            effectiveMax = new int[count];
+        }
+        if (languages.length < count) {
+            languages = new String[count];
+            values = new double[count];
+            ranks = new int[count];
+        }
+        size = 0;
+        ranked = 0;
+    }
+
+    /**
+     * Keeps the scores of the active languages, once the text has been scored.
+     *
+     * @param tree the tree which computed the scores
+     */
+    void collect(MultiGramTree tree) {
+        for (int i = 0; i < active.length; i++) {
+            if (active[i]) {
+                languages[size] = tree.getLanguage(i);
+                values[size] = scores[i];
+                size++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of scored languages
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the index of a language, in the order of the detector
+     * @return the language
+     */
+    public String getLanguage(int index) {
+        checkIndex(index, size);
+        return languages[index];
+    }
+
+    /**
+     * @param index the index of a language, in the order of the detector
+     * @return the score of the language
+     */
+    public double getScore(int index) {
+        checkIndex(index, size);
+        return values[index];
+    }
+
+    /**
+     * Ranks the languages with the best scores. Each language is compared to the ranked ones only, so that ranking
+     * the few best languages costs about one pass over the scores. Languages of the same score are ranked in the
+     * order of the detector.
+     *
+     * @param k the number of languages to rank
+     * @return the number of ranked languages, which is less than k if fewer languages have been scored
+     */
+    public int top(int k) {
+        final int count = Math.min(k, size);
+        ranked = 0;
+        for (int i = 0; i < size; i++) {
+            final double value = values[i];
+            if (ranked == count && (count == 0 || value <= values[ranks[count - 1]])) continue;
+            // insertion in the ranked languages, the last one being dropped when full
+            int pos = ranked < count ? ranked++ : count - 1;
+            while (pos > 0 && values[ranks[pos - 1]] < value) {
+                ranks[pos] = ranks[pos - 1];
+                pos--;
+            }
+            ranks[pos] = i;
+        }
+        return ranked;
+    }
+
+    /**
+     * @param rank a rank, from 0 for the best score, lower than the value returned by {@link #top(int)}
+     * @return the language at this rank
+     */
+    public String getTopLanguage(int rank) {
+        checkIndex(rank, ranked);
+        return languages[ranks[rank]];
+    }
+
+    /**
+     * @param rank a rank, from 0 for the best score, lower than the value returned by {@link #top(int)}
+     * @return the score of the language at this rank
+     */
+    public double getTopScore(int rank) {
+        checkIndex(rank, ranked);
+        return values[ranks[rank]];
+    }
+
+    private static void checkIndex(int index, int length) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + length);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+/**
+ * A contiguous part of a text written in a single language, as found by
+ * {@link LangDetector#detectSegments(CharSequence, java.util.Set, Segmentation)}.
+ */
+public class LanguageSpan {
+    private final String language;
+    private final int start;
+    private final int end;
+
+    public LanguageSpan(final String language, final int start, final int end) {
+        this.language = language;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return the language of the span, or null if no language scores on this part of the text
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * @return the offset of the first character of the span, inclusive
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return the offset of the last character of the span, exclusive
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("LanguageSpan");
+        sb.append("{language='").append(language).append('\'');
+        sb.append(", start=").append(start);
+        sb.append(", end=").append(end);
+        sb.append('}');
+        return sb.toString();
+    }
+}
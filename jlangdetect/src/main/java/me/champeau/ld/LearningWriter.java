@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Learns the n-grams of a text which is written in pieces, keeping only a fixed-size buffer. Positions of the text
+ * are learnt as soon as the longest n-gram starting there is known, and the last characters, which may start n-grams
+ * overlapping the next piece, are carried over. Once closed, the n-grams learnt are the same as if the whole text had
+ * been learnt at once.
+ */
+final class LearningWriter extends Writer {
+    private final static int BUFFER_SIZE = 8192;
+
+    /**
+     * Learns the n-grams starting at some positions of a text.
+     */
+    interface Learner {
+        /**
+         * @param text      the text, or a window of it which includes the n-grams starting at the learnt positions
+         * @param from      the first position to be learnt, inclusive
+         * @param to        the last position to be learnt, exclusive
+         * @param maxWindow size of the longest n-gram to be learnt, computed from the length of the whole text
+         */
+        void learn(CharSequence text, int from, int to, int maxWindow);
+    }
+
+    private final Learner learner;
+    private final int min;
+    private final int max;
+    private final char[] buffer;
+    private final CharBuffer window;
+    private int length;
+    private boolean started;
+    private boolean closed;
+
+    LearningWriter(Learner learner, int min, int max) {
+        this.learner = learner;
+        this.min = min;
+        this.max = max;
+        buffer = new char[BUFFER_SIZE + max];
+        window = CharBuffer.wrap(buffer);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int count) throws IOException {
+        if (closed) throw new IOException("Writer is closed");
+        while (count > 0) {
+            final int n = Math.min(count, buffer.length - length);
+            System.arraycopy(chars, offset, buffer, length, n);
+            length += n;
+            offset += n;
+            count -= n;
+            if (length == buffer.length) {
+                // the text is longer than the longest n-gram, whose length does not depend on the text anymore
+                started = true;
+                final int learnable = length - max + 1;
+                learner.learn(window.subSequence(0, length), 0, learnable, max);
+                System.arraycopy(buffer, learnable, buffer, 0, length - learnable);
+                length -= learnable;
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Learns the remaining positions of the text.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        final int maxWindow = started ? max : NGramIterator.maxWindow(length, min, max);
+        learner.learn(window.subSequence(0, length), 0, length, maxWindow);
+        length = 0;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ObjectStreamException;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * A compiled n-gram tree scored directly from a memory-mapped profile file, see {@link ProfileFormat#map(java.io.File)}.
+ * It has the same layout and child lookup strategies as a {@link CompiledGramTree}, but its arrays are views of the
+ * mapped file instead of heap arrays.
+ * <p>
+ * In order to keep the profile in the mapped pages, such a tree is not merged with other profiles by a
+ * {@link LangDetector}, but scored on its own. When serialized, it is replaced by a {@link CompiledGramTree}.
+ * <p>
+ * Thread-safe.
+ */
+public class MappedGramTree extends AbstractGramTree {
+    private final static Logger theLogger = LoggerFactory.getLogger(MappedGramTree.class);
+
+    private static final long serialVersionUID = 5330967124578212735L;
+
+    private final transient IntBuffer children;
+    private final transient FloatBuffer scores;
+    private final transient IntBuffer hashedRanks;
+    private final transient IntBuffer tableOffsets;
+    private final transient IntBuffer tables;
+    private final transient LongBuffer hashed;
+    private final transient CharBuffer labels;
+
+    MappedGramTree(int min, int max, long gramCount, IntBuffer children, FloatBuffer scores, IntBuffer hashedRanks,
+                   IntBuffer tableOffsets, IntBuffer tables, LongBuffer hashed, CharBuffer labels) {
+        super(min, max, gramCount);
+        this.children = children;
+        this.scores = scores;
+        this.hashedRanks = hashedRanks;
+        this.tableOffsets = tableOffsets;
+        this.tables = tables;
+        this.hashed = hashed;
+        this.labels = labels;
+    }
+
+    /**
+     * @return the number of nodes of this tree, including the root
+     */
+    public int getNodeCount() {
+        return labels.limit();
+    }
+
+    @Override
+    public double scoreText(CharSequence text) {
+        final int length = text.length();
+        final double tot = scorePositions(text, 0, length, NGramIterator.maxWindow(length, min, max));
+        if (theLogger.isDebugEnabled()) {
+            theLogger.debug(text + ", total " + tot);
+        }
+        return tot;
+    }
+
+    @Override
+    double scorePositions(CharSequence text, int from, int to, int maxWindow) {
+        final int length = text.length();
+        double tot = 0;
+        if (maxWindow >= min) {
+            for (int pos = from; pos < to; pos++) {
+                final int last = Math.min(maxWindow, length - pos);
+                int node = 0;
+                for (int window = 1; window <= last; window++) {
+                    node = findChild(node, text.charAt(pos + window - 1));
+                    if (node < 0) break;
+                    if (window >= min) tot += scores.get(node);
+                }
+            }
+        }
+        return tot;
+    }
+
+    @Override
+    boolean canMerge() {
+        return false;
+    }
+
+    @Override
+    void visitGrams(GramVisitor visitor) {
+        visitGrams(0, new char[max], 0, visitor);
+    }
+
+    private void visitGrams(int node, char[] gram, int depth, GramVisitor visitor) {
+        for (int child = children.get(node); child < children.get(node + 1); child++) {
+            gram[depth] = labels.get(child);
+            visitor.visit(gram, depth + 1, scores.get(child));
+            visitGrams(child, gram, depth + 1, visitor);
+        }
+    }
+
+    /**
+     * Same as {@link FlatTrie#findChild(int, char)}, reading the mapped buffers.
+     */
+    private int findChild(int node, char c) {
+        final int start = children.get(node);
+        final int end = children.get(node + 1);
+        final int fanout = end - start;
+        if (fanout <= FlatTrie.LINEAR_MAX) {
+            for (int i = start; i < end; i++) {
+                final char label = labels.get(i);
+                if (label == c) return i;
+                if (label > c) return -1;
+            }
+            return -1;
+        }
+        if (fanout < FlatTrie.HASHED_MIN) {
+            int lo = start;
+            int hi = end - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                final char label = labels.get(mid);
+                if (label < c) {
+                    lo = mid + 1;
+                } else if (label > c) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+        final int word = node >>> 6;
+        final int rank = hashedRanks.get(word) + Long.bitCount(hashed.get(word) & ((1L << node) - 1));
+        final int offset = tableOffsets.get(rank);
+        final int bits = FlatTrie.tableBits(fanout);
+        final int mask = (1 << bits) - 1;
+        int slot = FlatTrie.hash(c, bits);
+        while (true) {
+            final int child = tables.get(offset + slot);
+            if (child == 0) return -1;
+            if (labels.get(child) == c) return child;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        final int nodeCount = getNodeCount();
+        int[] children = new int[nodeCount + 1];
+        float[] scores = new float[nodeCount];
+        int[] hashedRanks = new int[this.hashedRanks.limit()];
+        int[] tableOffsets = new int[this.tableOffsets.limit()];
+        int[] tables = new int[this.tables.limit()];
+        long[] hashed = new long[this.hashed.limit()];
+        char[] labels = new char[nodeCount];
+        this.children.duplicate().get(children);
+        this.scores.duplicate().get(scores);
+        this.hashedRanks.duplicate().get(hashedRanks);
+        this.tableOffsets.duplicate().get(tableOffsets);
+        this.tables.duplicate().get(tables);
+        this.hashed.duplicate().get(hashed);
+        this.labels.duplicate().get(labels);
+        final FlatTrie trie = new FlatTrie(labels, children, hashed, hashedRanks, tableOffsets, tables);
+        return new CompiledGramTree(trie, scores, min, max, gramcount);
+    }
+}
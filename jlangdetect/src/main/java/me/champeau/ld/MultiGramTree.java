@@ -0,0 +1,388 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A lexical tree merging the n-grams of several language profiles. Each node carries the score of its n-gram for
+ * every language which knows it, so that a text is tokenized once and each n-gram is looked up for all the
+ * languages in a single traversal, instead of walking the text once per language.
+ * <p>
+ * The tree is laid out in primitive arrays, like a {@link CompiledGramTree}. In addition to the {@link FlatTrie}
+ * describing its structure, the postings of node <i>n</i>, that is to say the languages knowing its n-gram and the
+ * compiled score of the n-gram in each of them, are found from <i>postings[n]</i> to <i>postings[n+1]-1</i> in the
+ * <i>postingLangs</i> and <i>postingScores</i> arrays.
+ * <p>
+ * Profiles which cannot be merged (see {@link AbstractGramTree#canMerge()}) are scored on their own.
+ * <p>
+ * Immutable, hence thread-safe.
+ */
+final class MultiGramTree {
+    private final String[] languages;
+    private final int[] ids;
+    private final AbstractGramTree[] trees;
+    private final int[] mins;
+    private final int[] maxs;
+    private final boolean[] merged;
+    private final float[] maxScores;
+    private final FlatTrie trie;
+    private final int[] postings;
+    private final int[] postingLangs;
+    private final float[] postingScores;
+    private final int min;
+
+    /**
+     * Merges the provided language profiles.
+     *
+     * @param languages the language names
+     * @param trees     the profile of each language, in the same order
+     */
+    MultiGramTree(String[] languages, AbstractGramTree[] trees) {
+        this.languages = languages.clone();
+        this.trees = trees.clone();
+        int count = languages.length;
+        ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = LanguageIds.idOf(languages[i]);
+        }
+        mins = new int[count];
+        maxs = new int[count];
+        merged = new boolean[count];
+        maxScores = new float[count];
+        int globalMin = Integer.MAX_VALUE;
+        final NodeBuilder rootBuilder = new NodeBuilder('\u0000');
+        for (int i = 0; i < count; i++) {
+            final AbstractGramTree tree = trees[i];
+            mins[i] = tree.min;
+            maxs[i] = tree.max;
+            if (tree.canMerge()) {
+                merged[i] = true;
+                globalMin = Math.min(globalMin, tree.min);
+                final int lang = i;
+                tree.visitGrams(new AbstractGramTree.GramVisitor() {
+                    public void visit(final char[] gram, final int length, final float score) {
+                        rootBuilder.add(gram, length, lang, score);
+                        maxScores[lang] = Math.max(maxScores[lang], score);
+                    }
+                });
+            }
+        }
+        min = Math.max(1, globalMin == Integer.MAX_VALUE ? 1 : globalMin);
+
+        // breadth-first numbering, as expected by FlatTrie
+        List<NodeBuilder> nodes = new ArrayList<NodeBuilder>();
+        nodes.add(rootBuilder);
+        int postingCount = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            nodes.addAll(nodes.get(i).children);
+            postingCount += nodes.get(i).langs.length;
+        }
+        final int nodeCount = nodes.size();
+        final char[] labels = new char[nodeCount];
+        final int[] children = new int[nodeCount + 1];
+        postings = new int[nodeCount + 1];
+        postingLangs = new int[postingCount];
+        postingScores = new float[postingCount];
+        int nextChild = 1;
+        int nextPosting = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            final NodeBuilder node = nodes.get(i);
+            labels[i] = node.c;
+            children[i] = nextChild;
+            nextChild += node.children.size();
+            postings[i] = nextPosting;
+            System.arraycopy(node.langs, 0, postingLangs, nextPosting, node.langs.length);
+            System.arraycopy(node.scores, 0, postingScores, nextPosting, node.scores.length);
+            nextPosting += node.langs.length;
+        }
+        children[nodeCount] = nextChild;
+        postings[nodeCount] = nextPosting;
+        trie = new FlatTrie(labels, children);
+    }
+
+    /**
+     * @return the number of languages handled by this tree
+     */
+    int size() {
+        return languages.length;
+    }
+
+    /**
+     * @param lang a language index
+     * @return the name of the language
+     */
+    String getLanguage(int lang) {
+        return languages[lang];
+    }
+
+    /**
+     * Computes which languages are part of the provided restrictions.
+     *
+     * @param languageRestrictions the set of languages to be tested
+     * @return a flag for each language, telling if it must be scored
+     */
+    boolean[] select(Set<String> languageRestrictions) {
+        return select(languageRestrictions, new boolean[languages.length]);
+    }
+
+    /**
+     * Same as {@link #select(Set)}, but fills a caller supplied array.
+     *
+     * @param languageRestrictions the set of languages to be tested
+     * @param active               receives the flags, of the size of {@link #size()}
+     * @return the flags
+     */
+    boolean[] select(Set<String> languageRestrictions, boolean[] active) {
+        for (int i = 0; i < languages.length; i++) {
+            active[i] = languageRestrictions.contains(languages[i]);
+        }
+        return active;
+    }
+
+    /**
+     * Same as {@link #select(Set, boolean[])}, testing the language ids against a mask.
+     *
+     * @param languageRestrictions the mask of the languages to be tested
+     * @param active               receives the flags, of the size of {@link #size()}
+     * @return the flags
+     */
+    boolean[] select(LanguageMask languageRestrictions, boolean[] active) {
+        for (int i = 0; i < ids.length; i++) {
+            active[i] = languageRestrictions.contains(ids[i]);
+        }
+        return active;
+    }
+
+    /**
+     * Scores the text against each active language. The score of a language is the same as the one returned by
+     * {@link AbstractGramTree#scoreText(CharSequence)} on its own profile, within the tolerance of compiled scores
+     * (see {@link CompiledGramTree#SCORE_TOLERANCE}).
+     *
+     * @param text   the text to be scored
+     * @param active the languages to be scored
+     * @param scores receives the score of each active language
+     */
+    void scoreText(CharSequence text, boolean[] active, double[] scores) {
+        scoreText(text, active, scores, new int[languages.length]);
+    }
+
+    /**
+     * Same as {@link #scoreText(CharSequence, boolean[], double[])}, but uses a caller supplied scratch buffer, so
+     * that scoring many texts does not allocate.
+     *
+     * @param text         the text to be scored
+     * @param active       the languages to be scored
+     * @param scores       receives the score of each active language
+     * @param effectiveMax scratch buffer, of the size of {@link #size()}
+     */
+    void scoreText(CharSequence text, boolean[] active, double[] scores, int[] effectiveMax) {
+        scoreText(text, active, scores, effectiveMax, null);
+    }
+
+    /**
+     * Same as {@link #scoreText(CharSequence, boolean[], double[], int[])}, but also counts the n-grams of the text
+     * found in the profile of each merged language.
+     *
+     * @param text         the text to be scored
+     * @param active       the languages to be scored
+     * @param scores       receives the score of each active language
+     * @param effectiveMax scratch buffer, of the size of {@link #size()}, which receives the longest n-gram scored in
+     *                     each language
+     * @param hits         receives the number of n-grams found in each merged language, or null not to count them
+     * @see #gramCount(int, int, int[])
+     */
+    void scoreText(CharSequence text, boolean[] active, double[] scores, int[] effectiveMax, long[] hits) {
+        final int max = startScoring(text.length(), active, scores, effectiveMax);
+        if (hits != null) Arrays.fill(hits, 0);
+        scorePositions(text, 0, text.length(), max, active, scores, effectiveMax, hits);
+    }
+
+    /**
+     * Tells if the n-grams of a language are merged in this tree. Only those are counted as hits.
+     *
+     * @param lang a language index
+     * @return true if the profile of the language is merged
+     */
+    boolean isMerged(int lang) {
+        return merged[lang];
+    }
+
+    /**
+     * Returns the number of n-grams of a text which are looked up in the profile of a language, found or not.
+     *
+     * @param lang         a language index
+     * @param length       the length of the text
+     * @param effectiveMax the longest n-gram scored in each language, as computed by {@link #startScoring}
+     * @return the number of n-grams
+     */
+    long gramCount(int lang, int length, int[] effectiveMax) {
+        long count = 0;
+        for (int window = mins[lang]; window <= effectiveMax[lang]; window++) {
+            count += Math.max(0, length - window + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the length of the longest n-gram of the provided languages. Once that many characters of a text are
+     * known past a position, all the n-grams starting at this position can be scored.
+     *
+     * @param active the languages to be scored
+     * @return the length of the longest n-gram
+     */
+    int maxLength(boolean[] active) {
+        int max = 0;
+        for (int i = 0; i < languages.length; i++) {
+            if (active[i]) max = Math.max(max, maxs[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Prepares the incremental scoring of a text : resets the scores, and computes the longest n-gram scored in each
+     * language, which depends on the length of the text.
+     *
+     * @param length       the length of the text to be scored. Any length greater than {@link #maxLength(boolean[])}
+     *                     gives the same result, so that the exact length of a long text does not need to be known
+     * @param active       the languages to be scored
+     * @param scores       receives the score of each active language
+     * @param effectiveMax receives the longest n-gram scored in each language
+     * @return the longest n-gram scored in the merged languages
+     * @see #scorePositions(CharSequence, int, int, int, boolean[], double[], int[])
+     */
+    int startScoring(int length, boolean[] active, double[] scores, int[] effectiveMax) {
+        int max = 0;
+        for (int i = 0; i < languages.length; i++) {
+            scores[i] = 0;
+            effectiveMax[i] = NGramIterator.maxWindow(length, mins[i], maxs[i]);
+            if (active[i] && merged[i]) {
+                max = Math.max(max, effectiveMax[i]);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Adds to the scores of the active languages the scores of the n-grams starting between the provided positions.
+     * Scoring all the positions of a text, in any number of calls, gives the same scores as
+     * {@link #scoreText(CharSequence, boolean[], double[])}.
+     *
+     * @param text         the text to be scored, or a window of it which includes the n-grams starting at the scored
+     *                     positions
+     * @param from         the first position to be scored, inclusive
+     * @param to           the last position to be scored, exclusive
+     * @param max          the longest n-gram scored, as returned by {@link #startScoring}
+     * @param active       the languages to be scored
+     * @param scores       receives the score of each active language
+     * @param effectiveMax the longest n-gram scored in each language, as computed by {@link #startScoring}
+     */
+    void scorePositions(CharSequence text, int from, int to, int max, boolean[] active, double[] scores, int[] effectiveMax) {
+        scorePositions(text, from, to, max, active, scores, effectiveMax, null);
+    }
+
+    private void scorePositions(CharSequence text, int from, int to, int max, boolean[] active, double[] scores,
+                                int[] effectiveMax, long[] hits) {
+        for (int i = 0; i < languages.length; i++) {
+            if (active[i] && !merged[i]) {
+                scores[i] += trees[i].scorePositions(text, from, to, effectiveMax[i]);
+            }
+        }
+        final int len = text.length();
+        // a single descent from the root scores all the n-grams starting at a given position
+        for (int pos = from; pos < to; pos++) {
+            final int maxWindow = Math.min(max, len - pos);
+            int node = 0;
+            for (int window = 1; window <= maxWindow; window++) {
+                node = trie.findChild(node, text.charAt(pos + window - 1));
+                if (node < 0) break;
+                if (window < min) continue;
+                final int end = postings[node + 1];
+                for (int k = postings[node]; k < end; k++) {
+                    final int lang = postingLangs[k];
+                    if (active[lang] && window >= mins[lang] && window <= effectiveMax[lang]) {
+                        scores[lang] += postingScores[k];
+                        if (hits != null) hits[lang]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an upper bound of the score a language can gain from the n-grams starting at a single position.
+     *
+     * @param lang         a language index
+     * @param effectiveMax the longest n-gram scored in each language, as computed by {@link #startScoring}
+     * @return the bound, which is infinite for languages which are not merged since their scores are not known
+     */
+    double maxGainPerPosition(int lang, int[] effectiveMax) {
+        if (!merged[lang]) return Double.POSITIVE_INFINITY;
+        return Math.max(0, effectiveMax[lang] - mins[lang] + 1) * (double) maxScores[lang];
+    }
+
+    /**
+     * Mutable node used while merging the language profiles.
+     */
+    private static final class NodeBuilder {
+        private final char c;
+        private final List<NodeBuilder> children = new ArrayList<NodeBuilder>(4);
+        private int[] langs = new int[0];
+        private float[] scores = new float[0];
+
+        private NodeBuilder(final char c) {
+            this.c = c;
+        }
+
+        private void add(char[] gram, int length, int lang, float score) {
+            NodeBuilder cur = this;
+            for (int i = 0; i < length; i++) {
+                cur = cur.getOrCreateChild(gram[i]);
+            }
+            final int size = cur.langs.length;
+            cur.langs = Arrays.copyOf(cur.langs, size + 1);
+            cur.scores = Arrays.copyOf(cur.scores, size + 1);
+            cur.langs[size] = lang;
+            cur.scores[size] = score;
+        }
+
+        private NodeBuilder getOrCreateChild(char c) {
+            int lo = 0;
+            int hi = children.size() - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                final char midChar = children.get(mid).c;
+                if (midChar < c) {
+                    lo = mid + 1;
+                } else if (midChar > c) {
+                    hi = mid - 1;
+                } else {
+                    return children.get(mid);
+                }
+            }
+            final NodeBuilder child = new NodeBuilder(c);
+            children.add(lo, child);
+            return child;
+        }
+    }
+}
@@ -23,6 +23,9 @@ import java.util.Iterator;
 
 /**
  * Iterates over a char sequence to produce n-grams. Requires both minimal and maximal gram length.
+ * <p>
+ * Every n-gram is returned as a new char sequence : scoring and learning do not use this iterator anymore, but walk
+ * the text with offsets instead, producing the same n-grams as described by {@link #maxWindow(int, int, int)}.
  */
 public class NGramIterator implements Iterator<CharSequence> {
 	private final CharSequence buffer;
@@ -60,4 +63,19 @@ public class NGramIterator implements Iterator<CharSequence> {
 		throw new UnsupportedOperationException();
 	}
 
+	/**
+	 * Returns the size of the longest n-grams produced for a text of the given length. For each size from
+	 * <i>min</i> to this value, all the n-grams of the text are produced. Note that n-grams as long as the text
+	 * itself are only produced if they have the minimal size.
+	 *
+	 * @param length the length of the text
+	 * @param min    minimal n-gram size
+	 * @param max    maximal n-gram size
+	 * @return the maximal n-gram size, or a value lower than <i>min</i> if the text has no n-gram
+	 */
+	static int maxWindow(int length, int min, int max) {
+		if (min > length) return min - 1;
+		return Math.min(max, Math.max(min, length - 1));
+	}
+
 }
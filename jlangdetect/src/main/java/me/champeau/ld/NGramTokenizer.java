@@ -23,6 +23,9 @@ import java.util.Iterator;
 
 /**
  * Tokenizes char sequences. Wrapper for an @link NGramIterator.
+ * <p>
+ * Kept for compatibility : as it allocates a new char sequence for each n-gram, the gram trees do not rely on it
+ * anymore.
  */
 public class NGramTokenizer implements Iterable<CharSequence> {
 	final private CharSequence buffer;
@@ -0,0 +1,398 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads and writes language profiles in a compact, versioned binary format, which is much faster to load than Java
+ * serialization as it is made of a few primitive arrays, and can be memory-mapped.
+ * <p>
+ * All values are big-endian. A profile starts with a header made of the magic number, the format version, the minimal
+ * and maximal n-gram sizes, the n-gram count (a long), the number of nodes, then the sizes of the lookup tables of
+ * the {@link FlatTrie} : the number of words of the bitset of hashed nodes, the number of hash tables and their total
+ * size. Then come the arrays, ints and floats first so that they are aligned : children offsets, node scores, hashed
+ * node ranks, hash table offsets, hash tables, the bitset of hashed nodes, and finally the node labels.
+ */
+public final class ProfileFormat {
+    /**
+     * The first four bytes of a profile : "JLDP".
+     */
+    public static final int MAGIC = 0x4A4C4450;
+
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The first four bytes of a count profile : "JLDC".
+     */
+    public static final int COUNTS_MAGIC = 0x4A4C4443;
+
+    private static final int HEADER_SIZE = 40;
+
+    private ProfileFormat() {
+    }
+
+    /**
+     * Writes a compiled profile.
+     *
+     * @param tree the profile to be written
+     * @param out  the stream to write to, which is not closed
+     * @throws IOException if the profile cannot be written
+     */
+    public static void write(CompiledGramTree tree, OutputStream out) throws IOException {
+        final FlatTrie trie = tree.getTrie();
+        final float[] scores = tree.getScores();
+        final int nodeCount = trie.getNodeCount();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(tree.min);
+        data.writeInt(tree.max);
+        data.writeLong(tree.gramcount);
+        data.writeInt(nodeCount);
+        data.writeInt(trie.hashed.length);
+        data.writeInt(trie.tableOffsets.length);
+        data.writeInt(trie.tables.length);
+        for (int value : trie.children) data.writeInt(value);
+        for (float value : scores) data.writeFloat(value);
+        for (int value : trie.hashedRanks) data.writeInt(value);
+        for (int value : trie.tableOffsets) data.writeInt(value);
+        for (int value : trie.tables) data.writeInt(value);
+        for (long value : trie.hashed) data.writeLong(value);
+        for (char value : trie.labels) data.writeChar(value);
+        data.flush();
+    }
+
+    /**
+     * Computes the size of a profile written by {@link #write(CompiledGramTree, OutputStream)}.
+     *
+     * @param nodeCount  the number of nodes, root included
+     * @param tableCount the number of nodes looked up through a hash table
+     * @param tableSize  the total number of slots of the hash tables
+     * @return the size in bytes
+     */
+    static long size(int nodeCount, int tableCount, long tableSize) {
+        final long hashedWords = (nodeCount + 63L) >>> 6;
+        return HEADER_SIZE + 4L * (nodeCount + 1) + 4L * nodeCount + 4L * hashedWords + 4L * tableCount
+                + 4L * tableSize + 8L * hashedWords + 2L * nodeCount;
+    }
+
+    /**
+     * Reads a profile written by {@link #write(CompiledGramTree, OutputStream)} in memory.
+     *
+     * @param in the stream to read from, which is not closed
+     * @return the profile
+     * @throws IOException if the profile cannot be read, or is not in a supported version of the format
+     */
+    public static CompiledGramTree read(InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        final byte[] header = new byte[HEADER_SIZE];
+        final Sections sections;
+        try {
+            data.readFully(header);
+            sections = new Sections(ByteBuffer.wrap(header));
+        } catch (EOFException e) {
+            throw new IOException("Not a language profile", e);
+        }
+        final int nodeCount = sections.nodeCount;
+        // the arrays are read by chunks through a single buffer, so that the profile is never held twice, and each one
+        // is only allocated once the previous ones are read, so that a truncated profile fails early
+        final ArrayReader reader = new ArrayReader(data);
+        final int[] children;
+        final float[] scores;
+        final int[] hashedRanks;
+        final int[] tableOffsets;
+        final int[] tables;
+        final long[] hashed;
+        final char[] labels;
+        try {
+            children = reader.read(new int[nodeCount + 1]);
+            scores = reader.read(new float[nodeCount]);
+            hashedRanks = reader.read(new int[sections.hashedWords]);
+            tableOffsets = reader.read(new int[sections.tableCount]);
+            tables = reader.read(new int[sections.tableSize]);
+            hashed = reader.read(new long[sections.hashedWords]);
+            labels = reader.read(new char[nodeCount]);
+        } catch (EOFException e) {
+            throw new IOException("Truncated language profile", e);
+        }
+        final FlatTrie trie = new FlatTrie(labels, children, hashed, hashedRanks, tableOffsets, tables);
+        return new CompiledGramTree(trie, scores, sections.min, sections.max, sections.gramcount);
+    }
+
+    /**
+     * Reads a profile either written by {@link #write(CompiledGramTree, OutputStream)} or serialized with an
+     * {@link java.io.ObjectOutputStream}, as done by previous versions.
+     *
+     * @param in the stream to read from, which is closed once read
+     * @return the profile
+     * @throws IOException if the profile cannot be read
+     */
+    public static AbstractGramTree load(InputStream in) throws IOException {
+        final BufferedInputStream buffered = new BufferedInputStream(in);
+        try {
+            buffered.mark(4);
+            final int magic = (buffered.read() << 24) | (buffered.read() << 16) | (buffered.read() << 8) | buffered.read();
+            buffered.reset();
+            if (magic == MAGIC) {
+                return read(buffered);
+            }
+            try {
+                return (AbstractGramTree) new ObjectInputStream(buffered).readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unable to read serialized profile", e);
+            }
+        } finally {
+            buffered.close();
+        }
+    }
+
+    /**
+     * Writes the raw n-gram counts of a builder, which has not been built yet. Unlike a compiled profile, a count
+     * profile can be read back as a builder, to learn further texts or to be {@link GramTreeBuilder#merge merged}
+     * with other counts, so that a profile is updated with a new corpus without learning again the previous ones.
+     * <p>
+     * A count profile starts with the magic number {@link #COUNTS_MAGIC}, the format version, the minimal and maximal
+     * n-gram sizes, the n-gram count (a long) and the number of nodes. Then come the nodes of the tree in preorder,
+     * root included : the label (a char), the frequency and the number of children of each node.
+     *
+     * @param builder the builder, which may learn further texts once written
+     * @param out     the stream to write to, which is not closed
+     * @throws IOException if the counts cannot be written
+     */
+    public static void writeCounts(GramTreeBuilder builder, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(COUNTS_MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(builder.min);
+        data.writeInt(builder.max);
+        data.writeLong(builder.gramcount);
+        data.writeInt(builder.getNodeCount());
+        builder.writeNodes(data);
+        data.flush();
+    }
+
+    /**
+     * Reads the counts written by {@link #writeCounts(GramTreeBuilder, OutputStream)}. The truncation threshold is
+     * not part of the counts, and must be set again before the builder is built.
+     *
+     * @param in the stream to read from, which is not closed
+     * @return a builder holding the counts
+     * @throws IOException if the counts cannot be read, or are not in a supported version of the format
+     */
+    public static GramTreeBuilder readCounts(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != COUNTS_MAGIC) {
+            throw new IOException("Not a count profile");
+        }
+        final int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported count profile version " + version);
+        }
+        final int min = data.readInt();
+        final int max = data.readInt();
+        final long gramcount = data.readLong();
+        final int nodeCount = data.readInt();
+        return GramTreeBuilder.readNodes(data, min, max, gramcount, nodeCount);
+    }
+
+    /**
+     * Memory-maps a profile written by {@link #write(CompiledGramTree, OutputStream)}. The profile is scored directly
+     * from the mapped file, so that processes loading the same profile share its pages through the OS page cache.
+     *
+     * @param file the profile file
+     * @return the profile
+     * @throws IOException if the profile cannot be mapped, or is not in a supported version of the format
+     */
+    public static MappedGramTree map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final Sections sections = new Sections(data);
+            if (sections.size() > data.limit()) {
+                throw new IOException("Truncated language profile");
+            }
+            return new MappedGramTree(sections.min, sections.max, sections.gramcount,
+                    sections.slice(data, sections.children).asIntBuffer(),
+                    sections.slice(data, sections.scores).asFloatBuffer(),
+                    sections.slice(data, sections.hashedRanks).asIntBuffer(),
+                    sections.slice(data, sections.tableOffsets).asIntBuffer(),
+                    sections.slice(data, sections.tables).asIntBuffer(),
+                    sections.slice(data, sections.hashed).asLongBuffer(),
+                    sections.slice(data, sections.labels).asCharBuffer());
+        } finally {
+            // the mapping remains valid once the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the big-endian arrays of a profile from a stream, by chunks decoded from a reused buffer.
+     */
+    private static class ArrayReader {
+        private final DataInputStream in;
+        private final byte[] buffer = new byte[8192];
+        private final ByteBuffer view = ByteBuffer.wrap(buffer);
+
+        private ArrayReader(DataInputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Fills the buffer with the next values.
+         *
+         * @return the number of values in the buffer
+         */
+        private int fill(int remaining, int width) throws IOException {
+            final int count = Math.min(remaining, buffer.length / width);
+            in.readFully(buffer, 0, count * width);
+            view.clear();
+            view.limit(count * width);
+            return count;
+        }
+
+        private int[] read(int[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                final int count = fill(values.length - offset, 4);
+                view.asIntBuffer().get(values, offset, count);
+                offset += count;
+            }
+            return values;
+        }
+
+        private float[] read(float[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                final int count = fill(values.length - offset, 4);
+                view.asFloatBuffer().get(values, offset, count);
+                offset += count;
+            }
+            return values;
+        }
+
+        private long[] read(long[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                final int count = fill(values.length - offset, 8);
+                view.asLongBuffer().get(values, offset, count);
+                offset += count;
+            }
+            return values;
+        }
+
+        private char[] read(char[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                final int count = fill(values.length - offset, 2);
+                view.asCharBuffer().get(values, offset, count);
+                offset += count;
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Decodes and checks the header of a profile, and computes the position and size in bytes of each section. A
+     * profile is addressed by ints, so that it is never larger than {@link Integer#MAX_VALUE} bytes.
+     */
+    private static class Sections {
+        private final int min;
+        private final int max;
+        private final long gramcount;
+        private final int nodeCount;
+        private final int hashedWords;
+        private final int tableCount;
+        private final int tableSize;
+        private final int[] children;
+        private final int[] scores;
+        private final int[] hashedRanks;
+        private final int[] tableOffsets;
+        private final int[] tables;
+        private final int[] hashed;
+        private final int[] labels;
+
+        private Sections(ByteBuffer data) throws IOException {
+            if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+                throw new IOException("Not a language profile");
+            }
+            final int version = data.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported language profile version " + version);
+            }
+            min = data.getInt(8);
+            max = data.getInt(12);
+            gramcount = data.getLong(16);
+            nodeCount = data.getInt(24);
+            hashedWords = data.getInt(28);
+            tableCount = data.getInt(32);
+            tableSize = data.getInt(36);
+            if (nodeCount < 1 || hashedWords != (nodeCount + 63L) >>> 6 || tableCount < 0 || tableCount > nodeCount
+                    || tableSize < 0 || ProfileFormat.size(nodeCount, tableCount, tableSize) > Integer.MAX_VALUE) {
+                throw new IOException("Corrupted language profile");
+            }
+            // the sizes are checked, so that the positions cannot overflow
+            children = section(HEADER_SIZE, 4 * (nodeCount + 1));
+            scores = after(children, 4 * nodeCount);
+            hashedRanks = after(scores, 4 * hashedWords);
+            tableOffsets = after(hashedRanks, 4 * tableCount);
+            tables = after(tableOffsets, 4 * tableSize);
+            hashed = after(tables, 8 * hashedWords);
+            labels = after(hashed, 2 * nodeCount);
+        }
+
+        /**
+         * @return the size of the whole profile, in bytes
+         */
+        private int size() {
+            return labels[0] + labels[1];
+        }
+
+        private static int[] section(int position, int size) {
+            return new int[]{position, size};
+        }
+
+        private static int[] after(int[] previous, int size) {
+            return section(previous[0] + previous[1], size);
+        }
+
+        private ByteBuffer slice(ByteBuffer data, int[] section) {
+            ByteBuffer duplicate = data.duplicate();
+            duplicate.position(section[0]);
+            duplicate.limit(section[0] + section[1]);
+            return duplicate.slice();
+        }
+    }
+}
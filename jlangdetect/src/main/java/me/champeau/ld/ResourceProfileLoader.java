@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads a profile from the classpath, in any of the formats supported by {@link ProfileFormat#load(InputStream)}.
+ */
+public class ResourceProfileLoader implements ProfileLoader {
+    private final ClassLoader classLoader;
+    private final String resource;
+
+    /**
+     * @param classLoader the class loader from which the resource is loaded
+     * @param resource    the name of the resource
+     */
+    public ResourceProfileLoader(final ClassLoader classLoader, final String resource) {
+        this.classLoader = classLoader;
+        this.resource = resource;
+    }
+
+    public AbstractGramTree load() throws IOException {
+        final InputStream in = classLoader.getResourceAsStream(resource);
+        if (in == null) throw new IOException("Missing profile resource " + resource);
+        return ProfileFormat.load(in);
+    }
+
+    @Override
+    public String toString() {
+        return resource;
+    }
+}
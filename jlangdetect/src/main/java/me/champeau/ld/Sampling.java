@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.util.Random;
+
+/**
+ * Configures a language detection which only scores windows of the text, so that the cost of a detection is bounded
+ * whatever the length of the text. The text is split into as many slices of equal length as there are windows, and a
+ * window is picked at a pseudo-random offset in each slice, so that windows are spread over the whole text. Offsets
+ * only depend on the seed and the length of the text : detecting the language of a text twice gives the same result.
+ * <p>
+ * Texts which are not longer than the maximal number of characters are fully scored.
+ */
+public class Sampling {
+    /**
+     * Scores at most 16 windows of 256 characters.
+     */
+    public final static Sampling DEFAULT = new Sampling(256, 4096, 0);
+
+    private final int windowSize;
+    private final int maxChars;
+    private final long seed;
+
+    /**
+     * @param windowSize the number of positions scored in each window
+     * @param maxChars   the maximal number of positions scored in a text, which gives the number of windows
+     * @param seed       the seed of the offsets of the windows
+     */
+    public Sampling(final int windowSize, final int maxChars, final long seed) {
+        if (windowSize < 1) throw new IllegalArgumentException("Window size must be positive");
+        if (maxChars < windowSize) throw new IllegalArgumentException("Maximal number of characters must not be less than the window size");
+        this.windowSize = windowSize;
+        this.maxChars = maxChars;
+        this.seed = seed;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMaxChars() {
+        return maxChars;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Detects the language of a text from windows of it.
+     *
+     * @param tree   the merged tree of the languages
+     * @param text   the text for which to detect the language
+     * @param active the languages to be scored
+     * @return the detected language, and how many characters have been scored
+     */
+    DetectionResult detect(MultiGramTree tree, CharSequence text, boolean[] active) {
+        final int len = text.length();
+        final double[] scores = new double[tree.size()];
+        final int[] effectiveMax = new int[tree.size()];
+        final int max = tree.startScoring(len, active, scores, effectiveMax);
+        long consumed;
+        if (len <= maxChars) {
+            tree.scorePositions(text, 0, len, max, active, scores, effectiveMax);
+            consumed = len;
+        } else {
+            final int windows = maxChars / windowSize;
+            final long slice = len / windows;
+            final Random random = new Random(seed ^ len);
+            consumed = 0;
+            for (int i = 0; i < windows; i++) {
+                final int start = (int) (i * slice + random.nextInt((int) (slice - windowSize + 1)));
+                tree.scorePositions(text, start, start + windowSize, max, active, scores, effectiveMax);
+                consumed += windowSize;
+            }
+        }
+        return DetectionResult.of(tree, active, scores, consumed, len);
+    }
+}
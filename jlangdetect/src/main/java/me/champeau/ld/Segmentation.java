@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Configures the detection of the languages of the parts of a mixed-language text. Each character is given the
+ * language detected on a window of the text centered on it, and consecutive characters of the same language form a
+ * {@link LanguageSpan span}. Spans shorter than a minimal length are considered noise, and given the language of the
+ * previous span.
+ * <p>
+ * The score of the n-grams starting at each position is computed once : sliding the window adds the scores of the
+ * position entering the window and subtracts those of the position leaving it, so that the cost of a segmentation is
+ * linear in the length of the text, whatever the size of the window.
+ */
+public class Segmentation {
+    /**
+     * Detects languages on windows of 96 characters, and ignores spans shorter than 32 characters.
+     */
+    public final static Segmentation DEFAULT = new Segmentation(96, 32);
+
+    private final int windowSize;
+    private final int minSpanLength;
+
+    /**
+     * @param windowSize    the number of positions scored to detect the language of a character
+     * @param minSpanLength the length under which a span is merged into the previous one
+     */
+    public Segmentation(final int windowSize, final int minSpanLength) {
+        if (windowSize < 1) throw new IllegalArgumentException("Window size must be positive");
+        if (minSpanLength < 0) throw new IllegalArgumentException("Minimal span length must not be negative");
+        this.windowSize = windowSize;
+        this.minSpanLength = minSpanLength;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMinSpanLength() {
+        return minSpanLength;
+    }
+
+    /**
+     * Splits a text into spans of a single language.
+     *
+     * @param tree   the merged tree of the languages
+     * @param text   the text to be split
+     * @param active the languages to be scored
+     * @return the spans, covering the whole text in order
+     */
+    List<LanguageSpan> segment(MultiGramTree tree, CharSequence text, boolean[] active) {
+        final int len = text.length();
+        final List<LanguageSpan> spans = new ArrayList<LanguageSpan>();
+        if (len == 0) return spans;
+        final int count = tree.size();
+        final int window = Math.min(windowSize, len);
+        final double[] scores = new double[count];
+        final int[] effectiveMax = new int[count];
+        final int max = tree.startScoring(len, active, scores, effectiveMax);
+        // scores of the positions of the current window, indexed by position modulo the window size
+        final double[] gains = new double[window * count];
+        final double[] gain = new double[count];
+        for (int pos = 0; pos < window; pos++) {
+            scorePosition(tree, text, pos, max, active, gain, effectiveMax);
+            System.arraycopy(gain, 0, gains, pos * count, count);
+            for (int i = 0; i < count; i++) scores[i] += gain[i];
+        }
+        int start = 0;
+        int windowStart = 0;
+        String current = LangDetector.bestLanguage(tree, active, scores);
+        for (int pos = 1; pos < len; pos++) {
+            final int target = Math.max(0, Math.min(pos - window / 2, len - window));
+            if (target > windowStart) {
+                // slides the window by one position
+                final int slot = (windowStart % window) * count;
+                scorePosition(tree, text, windowStart + window, max, active, gain, effectiveMax);
+                for (int i = 0; i < count; i++) {
+                    scores[i] += gain[i] - gains[slot + i];
+                    gains[slot + i] = gain[i];
+                }
+                windowStart++;
+                final String language = LangDetector.bestLanguage(tree, active, scores);
+                if (language == null ? current != null : !language.equals(current)) {
+                    spans.add(new LanguageSpan(current, start, pos));
+                    start = pos;
+                    current = language;
+                }
+            }
+        }
+        spans.add(new LanguageSpan(current, start, len));
+        return merge(spans);
+    }
+
+    private static void scorePosition(MultiGramTree tree, CharSequence text, int pos, int max, boolean[] active,
+                                      double[] gain, int[] effectiveMax) {
+        Arrays.fill(gain, 0);
+        tree.scorePositions(text, pos, pos + 1, max, active, gain, effectiveMax);
+    }
+
+    /**
+     * Gives short spans the language of the previous one, and joins consecutive spans of the same language.
+     *
+     * @param spans the spans
+     * @return the merged spans
+     */
+    private List<LanguageSpan> merge(List<LanguageSpan> spans) {
+        final List<LanguageSpan> merged = new ArrayList<LanguageSpan>(spans.size());
+        for (int i = 0; i < spans.size(); i++) {
+            LanguageSpan span = spans.get(i);
+            String language = span.getLanguage();
+            if (span.getEnd() - span.getStart() < minSpanLength) {
+                if (!merged.isEmpty()) {
+                    language = merged.get(merged.size() - 1).getLanguage();
+                } else if (i + 1 < spans.size()) {
+                    language = spans.get(i + 1).getLanguage();
+                }
+            }
+            if (!merged.isEmpty()) {
+                final LanguageSpan previous = merged.get(merged.size() - 1);
+                if (language == null ? previous.getLanguage() == null : language.equals(previous.getLanguage())) {
+                    merged.set(merged.size() - 1, new LanguageSpan(language, previous.getStart(), span.getEnd()));
+                    continue;
+                }
+            }
+            merged.add(new LanguageSpan(language, span.getStart(), span.getEnd()));
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld;
+
+/**
+ * An immutable language detector whose profiles can be replaced, as a whole and atomically, by those of another
+ * detector. This allows services sharing a single detector between threads to deploy new profiles without
+ * coordinating with the threads detecting languages : a detection uses either the old or the new profiles, never a
+ * mix of both.
+ */
+public class SwappableLangDetector extends LangDetector {
+
+    /**
+     * @param initial the detector whose profiles are used until the first {@link #swap(LangDetector) swap}
+     */
+    public SwappableLangDetector(LangDetector initial) {
+        super(initial.getLoadedProfiles(), true);
+    }
+
+    /**
+     * Replaces the profiles of this detector by those of the provided detector. They are loaded before being swapped,
+     * so that no detection pays for it.
+     *
+     * @param replacement the detector whose profiles are used from now on
+     */
+    public void swap(LangDetector replacement) {
+        setProfiles(replacement.getLoadedProfiles());
+    }
+}
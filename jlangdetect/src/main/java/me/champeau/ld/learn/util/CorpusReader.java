@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld.learn.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the lines of corpus files without loading them in memory. Files are read through NIO and decoded into a
+ * buffer which is reused from a file to another, and lines are handed out as views on this buffer : only the lines
+ * which span two buffer fills are copied. Lines are split the same way as {@link java.io.BufferedReader#readLine()}
+ * does, and a {@link LineFilter} may skip some of them, for example markup lines.
+ * <p>
+ * A reader is not thread-safe : each learning thread should use its own.
+ */
+public class CorpusReader {
+    private final static int BUFFER_SIZE = 65536;
+
+    /**
+     * Accepts every line.
+     */
+    public final static LineFilter ALL_LINES = new LineFilter() {
+        public boolean accept(CharSequence line) {
+            return true;
+        }
+    };
+
+    /**
+     * Skips the XML lines of the EPPPC files, which start with '&lt;' (speaker and chapter tags).
+     */
+    public final static LineFilter SKIP_XML_LINES = new LineFilter() {
+        public boolean accept(CharSequence line) {
+            return line.length() == 0 || line.charAt(0) != '<';
+        }
+    };
+
+    /**
+     * Tells which lines of a corpus should be learnt.
+     */
+    public interface LineFilter {
+        /**
+         * @param line a line, without its terminator
+         * @return true if the line should be learnt
+         */
+        boolean accept(CharSequence line);
+    }
+
+    /**
+     * Receives the accepted lines of a file.
+     */
+    public interface LineHandler {
+        /**
+         * @param line a line, without its terminator. The buffer is only valid until this method returns, and must
+         *             not be modified.
+         * @throws IOException if the line cannot be handled
+         */
+        void line(CharBuffer line) throws IOException;
+    }
+
+    private final LineFilter filter;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer view = CharBuffer.wrap(chars.array());
+    private char[] pending = new char[256];
+    private CharBuffer pendingView = CharBuffer.wrap(pending);
+    private int pendingLength;
+    private boolean skipLF;
+
+    /**
+     * @param charset the encoding of the files. Malformed input is replaced, as {@link java.io.InputStreamReader}
+     *                does.
+     * @param filter  the filter of the lines
+     */
+    public CorpusReader(Charset charset, LineFilter filter) {
+        this.filter = filter;
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Reads a file, and hands out its accepted lines in order.
+     *
+     * @param file    the file
+     * @param handler the handler of the lines
+     * @throws IOException if the file cannot be read, or if the handler fails
+     */
+    public void readLines(File file, LineHandler handler) throws IOException {
+        decoder.reset();
+        bytes.clear();
+        chars.clear();
+        pendingLength = 0;
+        skipLF = false;
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(bytes) < 0;
+                bytes.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(bytes, chars, eof);
+                    split(handler);
+                } while (result.isOverflow());
+                bytes.compact();
+            }
+            while (decoder.flush(chars).isOverflow()) {
+                split(handler);
+            }
+            split(handler);
+            if (pendingLength > 0) {
+                emit(pendingView, 0, pendingLength, handler);
+                pendingLength = 0;
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads a file, and writes its accepted lines, each followed by '\n'. Used with
+     * {@link me.champeau.ld.GramTreeBuilder#newTextWriter()}, the filtered file is learnt as a single text.
+     *
+     * @param file the file
+     * @param out  the writer, which is not closed
+     * @throws IOException if the file cannot be read, or if the writer fails
+     */
+    public void read(File file, final Writer out) throws IOException {
+        readLines(file, new LineHandler() {
+            public void line(CharBuffer line) throws IOException {
+                out.write(line.array(), line.arrayOffset() + line.position(), line.remaining());
+                out.write('\n');
+            }
+        });
+    }
+
+    /**
+     * Hands out the lines completed by the decoded characters, and keeps the last incomplete line as pending.
+     */
+    private void split(LineHandler handler) throws IOException {
+        chars.flip();
+        final char[] array = chars.array();
+        final int end = chars.limit();
+        int start = 0;
+        for (int i = 0; i < end; i++) {
+            final char c = array[i];
+            if (skipLF) {
+                skipLF = false;
+                if (c == '\n') {
+                    start = i + 1;
+                    continue;
+                }
+            }
+            if (c == '\n' || c == '\r') {
+                if (pendingLength > 0) {
+                    appendPending(array, start, i);
+                    emit(pendingView, 0, pendingLength, handler);
+                    pendingLength = 0;
+                } else {
+                    emit(view, start, i, handler);
+                }
+                start = i + 1;
+                skipLF = c == '\r';
+            }
+        }
+        appendPending(array, start, end);
+        chars.clear();
+    }
+
+    private void appendPending(char[] array, int from, int to) {
+        final int count = to - from;
+        if (pendingLength + count > pending.length) {
+            char[] grown = new char[Math.max(pending.length * 2, pendingLength + count)];
+            System.arraycopy(pending, 0, grown, 0, pendingLength);
+            pending = grown;
+            pendingView = CharBuffer.wrap(pending);
+        }
+        System.arraycopy(array, from, pending, pendingLength, count);
+        pendingLength += count;
+    }
+
+    private void emit(CharBuffer buffer, int from, int to, LineHandler handler) throws IOException {
+        buffer.clear();
+        buffer.position(from);
+        buffer.limit(to);
+        if (filter.accept(buffer)) handler.line(buffer);
+    }
+}
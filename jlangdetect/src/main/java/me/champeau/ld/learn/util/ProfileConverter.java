@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld.learn.util;
+
+import me.champeau.ld.AbstractGramTree;
+import me.champeau.ld.CompiledGramTree;
+import me.champeau.ld.ProfileFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+
+/**
+ * Converts language profiles serialized by previous versions into the {@link ProfileFormat} binary format.
+ */
+public class ProfileConverter {
+    private final static Logger theLogger = LoggerFactory.getLogger(ProfileConverter.class);
+
+    /**
+     * Converts a single profile.
+     * @param src the serialized profile
+     * @param dst the file to write the converted profile to
+     * @throws IOException if the profile cannot be read or written
+     */
+    public static void convert(File src, File dst) throws IOException {
+        AbstractGramTree tree = ProfileFormat.load(new FileInputStream(src));
+        if (!(tree instanceof CompiledGramTree)) {
+            throw new IOException("Unsupported profile type " + tree.getClass().getName() + " in " + src);
+        }
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(dst));
+        try {
+            ProfileFormat.write((CompiledGramTree) tree, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage : java " + ProfileConverter.class.getCanonicalName() + " <sourcedir> <destdir>");
+            System.exit(-1);
+        }
+        File srcDir = new File(args[0]);
+        File dstDir = new File(args[1]);
+        dstDir.mkdirs();
+        for (File file : srcDir.listFiles()) {
+            if (!file.isFile()) continue;
+            try {
+                convert(file, new File(dstDir, file.getName()));
+                theLogger.info("Converted " + file.getName());
+            } catch (IOException e) {
+                theLogger.error("Unable to convert profile " + file, e);
+            }
+        }
+    }
+}
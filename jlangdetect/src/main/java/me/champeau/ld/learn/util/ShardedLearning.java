@@ -0,0 +1,484 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+package me.champeau.ld.learn.util;
+
+import me.champeau.ld.CompiledGramTree;
+import me.champeau.ld.GramTreeBuilder;
+import me.champeau.ld.HashGramTreeBuilder;
+import me.champeau.ld.ProfileFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Learns the profiles of several languages from a directory containing a subdirectory of text files per language.
+ * The files of each language are split into as many shards as there are threads, so that all the cores are used even
+ * when a single language has a huge corpus : each shard is learnt by its own builder, and the builders of a language
+ * are then merged. As merging adds up frequencies, the profiles do not depend on the number of threads.
+ * <p>
+ * Shards are learnt by {@link GramTreeBuilder}s, or by {@link HashGramTreeBuilder}s with the {@link Backend#HASH hash
+ * backend}, which is faster on corpora with many distinct characters and can spill its counts to disk under a memory
+ * budget. Both backends build the same profiles, but only the nodes backend supports keeping counts and budgets on the
+ * size of the profiles.
+ * <p>
+ * Subclasses tell the truncation threshold of each language, and how to learn a file.
+ */
+public abstract class ShardedLearning {
+    private final static Logger theLogger = LoggerFactory.getLogger(ShardedLearning.class);
+
+    /**
+     * The builders the shards are learnt by.
+     */
+    public enum Backend {
+        /**
+         * {@link GramTreeBuilder}, which supports keeping the counts of each language, see
+         * {@link #setCountsDirectory(File)}, and budgets on the size of the profiles, see
+         * {@link #setMaxNodeCount(int)} and {@link #setMaxProfileSize(long)}.
+         */
+        NODES,
+        /**
+         * {@link HashGramTreeBuilder}, see {@link #setMemoryBudget(long)}.
+         */
+        HASH
+    }
+
+    private final int min;
+    private final int max;
+    private Backend backend = Backend.NODES;
+    private long memoryBudget = Long.MAX_VALUE;
+    private int maxNodeCount = Integer.MAX_VALUE;
+    private long maxProfileSize = Long.MAX_VALUE;
+    private File countsDir;
+
+    /**
+     * @param min minimal n-gram size
+     * @param max maximum n-gram size
+     */
+    protected ShardedLearning(int min, int max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @param backend the builders the shards are learnt by, {@link Backend#NODES} by default
+     */
+    public void setBackend(Backend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Bounds the memory used by each shard to count n-grams with the {@link Backend#HASH hash backend}, further
+     * counts being spilled to temporary files.
+     *
+     * @param bytes the memory budget of a shard, in bytes
+     * @see HashGramTreeBuilder#setMemoryBudget(long)
+     */
+    public void setMemoryBudget(long bytes) {
+        this.memoryBudget = bytes;
+    }
+
+    /**
+     * Bounds the number of nodes of each profile, with the {@link Backend#NODES nodes backend}.
+     *
+     * @param maxNodeCount the maximum number of nodes, root included
+     * @see GramTreeBuilder#setMaxNodeCount(int)
+     */
+    public void setMaxNodeCount(int maxNodeCount) {
+        // checked by a builder, which knows the valid bounds
+        new GramTreeBuilder(min, max).setMaxNodeCount(maxNodeCount);
+        this.maxNodeCount = maxNodeCount;
+    }
+
+    /**
+     * Bounds the size of each profile, with the {@link Backend#NODES nodes backend}.
+     *
+     * @param bytes the maximum size of a profile, in bytes
+     * @see GramTreeBuilder#setMaxProfileSize(long)
+     */
+    public void setMaxProfileSize(long bytes) {
+        new GramTreeBuilder(min, max).setMaxProfileSize(bytes);
+        this.maxProfileSize = bytes;
+    }
+
+    /**
+     * Configures this learning from the options found at the beginning of command line arguments : <i>--hash</i>
+     * selects the {@link Backend#HASH hash backend}, <i>--memory-budget &lt;megabytes&gt;</i> sets the memory
+     * budget of each shard, and <i>--max-nodes &lt;count&gt;</i> and <i>--max-size &lt;kilobytes&gt;</i> bound the
+     * profiles.
+     *
+     * @param args the command line arguments
+     * @return the index of the first argument which is not an option
+     * @throws IllegalArgumentException if an option is not valid
+     */
+    public int parseOptions(String[] args) {
+        int i = 0;
+        while (i < args.length && args[i].startsWith("--")) {
+            if (args[i].equals("--hash")) {
+                setBackend(Backend.HASH);
+                i++;
+            } else if (args[i].equals("--memory-budget") && i + 1 < args.length) {
+                setMemoryBudget(Long.parseLong(args[i + 1]) << 20);
+                i += 2;
+            } else if (args[i].equals("--max-nodes") && i + 1 < args.length) {
+                setMaxNodeCount(Integer.parseInt(args[i + 1]));
+                i += 2;
+            } else if (args[i].equals("--max-size") && i + 1 < args.length) {
+                setMaxProfileSize(Long.parseLong(args[i + 1]) << 10);
+                i += 2;
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Keeps the raw counts of each language in a directory, as [lang]_counts.bin files. When set, the counts already
+     * in the directory are merged with the ones of the corpus before the profile is built, and saved back : the
+     * corpus then only has to contain the texts which have not been learnt yet.
+     *
+     * Counts can only be kept with the {@link Backend#NODES nodes backend}.
+     *
+     * @param countsDir the directory of the counts, or null not to keep them
+     * @see ProfileFormat#writeCounts(GramTreeBuilder, OutputStream)
+     */
+    public void setCountsDirectory(File countsDir) {
+        this.countsDir = countsDir;
+    }
+
+    /**
+     * @param lang the language
+     * @return the truncation threshold of the profile of the language
+     * @see GramTreeBuilder#setTruncationThreshold(double)
+     */
+    protected abstract double getTruncationThreshold(String lang);
+
+    /**
+     * Learns the n-grams of a file.
+     *
+     * @param shard the shard the file belongs to
+     * @param file  the file
+     * @throws IOException if the file cannot be read
+     */
+    protected abstract void learn(Shard shard, File file) throws IOException;
+
+    /**
+     * Learns the profile of each language, and saves it in the destination directory as [lang]_tree.bin. Shards are
+     * learnt in the order of the languages, and merged as soon as they are learnt, so that no more than a shard per
+     * thread is pending at any time : the memory used does not depend on the number of languages.
+     *
+     * @param srcDir  source directory where to find language specific directories
+     * @param dstDir  output directory for compiled n-grams trees
+     * @param langs   list of languages to be compiled
+     * @param threads the number of threads
+     * @return the map of trees, in the order of the languages
+     */
+    public Map<String, CompiledGramTree> readCorpus(final File srcDir, final File dstDir, String[] langs, int threads) {
+        if (countsDir != null && backend != Backend.NODES) {
+            throw new IllegalStateException("Counts can only be kept with the " + Backend.NODES + " backend");
+        }
+        if ((maxNodeCount != Integer.MAX_VALUE || maxProfileSize != Long.MAX_VALUE) && backend != Backend.NODES) {
+            throw new IllegalStateException("Profiles can only be bounded with the " + Backend.NODES + " backend");
+        }
+        theLogger.info("Parallel processing of " + langs.length + " languages by " + threads + " shards...");
+        final List<ShardTask> tasks = new ArrayList<ShardTask>();
+        for (final String lang : langs) {
+            final File[] files = new File(srcDir, lang).listFiles();
+            if (files == null) {
+                theLogger.error("Unable to list directory " + lang);
+                continue;
+            }
+            Arrays.sort(files);
+            final int count = Math.max(1, Math.min(threads, files.length));
+            final LanguageShards language = new LanguageShards(lang, count);
+            for (int i = 0; i < count; i++) {
+                tasks.add(new ShardTask(language, files, i, count));
+            }
+        }
+        final ExecutorService service = Executors.newFixedThreadPool(threads);
+        final CompletionService<Shard> completion = new ExecutorCompletionService<Shard>(service);
+        final Map<Future<Shard>, LanguageShards> pending = new HashMap<Future<Shard>, LanguageShards>();
+        final Map<String, CompiledGramTree> learnt = new HashMap<String, CompiledGramTree>();
+        try {
+            int next = 0;
+            while (next < tasks.size() || !pending.isEmpty()) {
+                while (next < tasks.size() && pending.size() < threads) {
+                    final ShardTask task = tasks.get(next++);
+                    pending.put(completion.submit(task), task.language);
+                }
+                final Future<Shard> done = completion.take();
+                final LanguageShards language = pending.remove(done);
+                try {
+                    language.add(done.get());
+                } catch (ExecutionException e) {
+                    if (!language.failed) theLogger.error("Unable to learn lang " + language.lang, e.getCause());
+                    language.fail();
+                }
+                if (--language.remaining == 0 && !language.failed) {
+                    try {
+                        if (countsDir != null) updateCounts(language.lang, ((NodeShard) language.tree).builder);
+                        final CompiledGramTree build = language.tree.build();
+                        learnt.put(language.lang, build);
+                        save(language.lang, build, dstDir);
+                    } catch (IOException e) {
+                        theLogger.error("Unable to update counts of lang " + language.lang, e);
+                    }
+                    language.tree = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            service.shutdownNow();
+            // the languages left unfinished by an interruption or an error
+            for (ShardTask task : tasks) {
+                if (task.language.tree != null) task.language.fail();
+            }
+        }
+        final Map<String, CompiledGramTree> trees = new LinkedHashMap<String, CompiledGramTree>();
+        for (String lang : langs) {
+            if (learnt.containsKey(lang)) trees.put(lang, learnt.get(lang));
+        }
+        return trees;
+    }
+
+    private Shard newShard(String lang) {
+        if (backend == Backend.HASH) {
+            final HashGramTreeBuilder builder = new HashGramTreeBuilder(min, max);
+            builder.setTruncationThreshold(getTruncationThreshold(lang));
+            builder.setMemoryBudget(memoryBudget);
+            return new HashShard(builder);
+        }
+        final GramTreeBuilder builder = new GramTreeBuilder(min, max);
+        builder.setTruncationThreshold(getTruncationThreshold(lang));
+        if (maxNodeCount != Integer.MAX_VALUE) builder.setMaxNodeCount(maxNodeCount);
+        if (maxProfileSize != Long.MAX_VALUE) builder.setMaxProfileSize(maxProfileSize);
+        return new NodeShard(builder);
+    }
+
+    /**
+     * Merges the previous counts of a language into the builder, then saves the counts of the builder.
+     */
+    private void updateCounts(String lang, GramTreeBuilder tree) throws IOException {
+        File file = new File(countsDir, lang + "_counts.bin");
+        if (file.isFile()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                tree.merge(ProfileFormat.readCounts(in));
+            } finally {
+                in.close();
+            }
+            theLogger.info("Merged previous counts of " + lang);
+        }
+        countsDir.mkdirs();
+        // written aside then renamed, so that the previous counts are not lost if writing fails
+        File tmp = new File(countsDir, lang + "_counts.bin.tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+        try {
+            ProfileFormat.writeCounts(tree, out);
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void save(String lang, CompiledGramTree tree, File dstDir) {
+        theLogger.info("Saving tree : " + lang);
+        File dst = new File(dstDir, lang + "_tree.bin");
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(dst));
+            ProfileFormat.write(tree, out);
+            out.close();
+        } catch (IOException e) {
+            theLogger.error("Unable to write lang tree " + lang, e);
+        }
+        theLogger.info("Lang " + lang + " complete !");
+    }
+
+    /**
+     * The shards of a language, merged into the first one as they are learnt.
+     */
+    private static class LanguageShards {
+        private final String lang;
+        private int remaining;
+        private Shard tree;
+        private boolean failed;
+
+        private LanguageShards(String lang, int count) {
+            this.lang = lang;
+            this.remaining = count;
+        }
+
+        private void add(Shard shard) {
+            if (failed) {
+                shard.discard();
+            } else if (tree == null) {
+                tree = shard;
+            } else {
+                tree.merge(shard);
+            }
+        }
+
+        /**
+         * Gives up on the language, deleting what its merged shards may have spilled to disk.
+         */
+        private void fail() {
+            failed = true;
+            if (tree != null) tree.discard();
+            tree = null;
+        }
+    }
+
+    /**
+     * Learns every <i>count</i>th file of a language, starting at the file of index <i>shard</i>.
+     */
+    private class ShardTask implements Callable<Shard> {
+        private final LanguageShards language;
+        private final File[] files;
+        private final int shard;
+        private final int count;
+
+        private ShardTask(LanguageShards language, File[] files, int shard, int count) {
+            this.language = language;
+            this.files = files;
+            this.shard = shard;
+            this.count = count;
+        }
+
+        public Shard call() throws IOException {
+            final Shard builder = newShard(language.lang);
+            boolean learnt = false;
+            try {
+                for (int f = shard; f < files.length; f += count) {
+                    learn(builder, files[f]);
+                }
+                learnt = true;
+            } finally {
+                if (!learnt) builder.discard();
+            }
+            theLogger.info("Processed shard " + (shard + 1) + "/" + count + " of " + language.lang);
+            return builder;
+        }
+    }
+
+    /**
+     * The builder of a shard, whatever the backend.
+     */
+    public abstract static class Shard {
+        private Shard() {
+        }
+
+        /**
+         * @param text a text to learn n-grams from
+         * @see GramTreeBuilder#learn(CharSequence)
+         */
+        public abstract void learn(CharSequence text);
+
+        /**
+         * @return a writer learning the text written to it, as a single text
+         * @see GramTreeBuilder#newTextWriter()
+         */
+        public abstract Writer newTextWriter();
+
+        abstract void merge(Shard other);
+
+        abstract CompiledGramTree build();
+
+        abstract void discard();
+    }
+
+    private static class NodeShard extends Shard {
+        private final GramTreeBuilder builder;
+
+        private NodeShard(GramTreeBuilder builder) {
+            this.builder = builder;
+        }
+
+        public void learn(CharSequence text) {
+            builder.learn(text);
+        }
+
+        public Writer newTextWriter() {
+            return builder.newTextWriter();
+        }
+
+        void merge(Shard other) {
+            builder.merge(((NodeShard) other).builder);
+        }
+
+        CompiledGramTree build() {
+            return (CompiledGramTree) builder.build();
+        }
+
+        void discard() {
+        }
+    }
+
+    private static class HashShard extends Shard {
+        private final HashGramTreeBuilder builder;
+
+        private HashShard(HashGramTreeBuilder builder) {
+            this.builder = builder;
+        }
+
+        public void learn(CharSequence text) {
+            builder.learn(text);
+        }
+
+        public Writer newTextWriter() {
+            return builder.newTextWriter();
+        }
+
+        void merge(Shard other) {
+            builder.merge(((HashShard) other).builder);
+        }
+
+        CompiledGramTree build() {
+            return builder.build();
+        }
+
+        void discard() {
+            builder.discard();
+        }
+    }
+}
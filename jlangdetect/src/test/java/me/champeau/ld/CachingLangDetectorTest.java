@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+
+package me.champeau.ld;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static me.champeau.ld.Corpus.ENGLISH;
+import static me.champeau.ld.Corpus.FRENCH;
+import static me.champeau.ld.Corpus.learn;
+import static org.testng.Assert.assertEquals;
+
+public class CachingLangDetectorTest {
+
+    @Test
+    public void shouldNotLoadProfilesOfWrappedDetector() {
+        final Map<String, String> corpora = new HashMap<String, String>();
+        corpora.put("fr", FRENCH);
+        corpora.put("en", ENGLISH);
+        final Map<String, Integer> loads = new HashMap<String, Integer>();
+        LangDetector.Builder builder = LangDetector.builder();
+        for (final String lang : corpora.keySet()) {
+            loads.put(lang, 0);
+            builder.register(lang, new ProfileLoader() {
+                public AbstractGramTree load() {
+                    loads.put(lang, loads.get(lang) + 1);
+                    return learn(new GramTreeBuilder(1, 3), corpora.get(lang)).build();
+                }
+            });
+        }
+        LangDetector detector = builder.build();
+        CachingLangDetector cache = new CachingLangDetector(detector, 16);
+        assertEquals(cache.getLanguages(), detector.getLanguages());
+        assertEquals((int) loads.get("fr"), 0);
+        assertEquals((int) loads.get("en"), 0);
+        assertEquals(cache.detectLang("le lexique", Collections.singleton("fr")), "fr");
+        assertEquals(cache.detectLang("le lexique", LanguageMask.of("fr")), "fr");
+        assertEquals(cache.getHitCount(), 1);
+        assertEquals((int) loads.get("fr"), 1);
+        assertEquals((int) loads.get("en"), 0);
+        // misses are detected by the wrapped detector, which loads each profile once
+        assertEquals(cache.detectLangs(Arrays.asList("the dog", "le lexique")), Arrays.asList("en", "fr"));
+        assertEquals(detector.detectLang("the dog"), "en");
+        assertEquals((int) loads.get("fr"), 1);
+        assertEquals((int) loads.get("en"), 1);
+    }
+}
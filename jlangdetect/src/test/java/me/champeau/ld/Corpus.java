@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+
+package me.champeau.ld;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * The texts the builder tests learn from, and helpers to compare the profiles built from them.
+ */
+public final class Corpus {
+    public static final String FRENCH = "Une première optimisation consiste à ne tester que les sous-chaînes de taille compatibles avec le lexique.";
+    public static final String CHINESE = "马兜铃猪笼草是苏门答腊特有的热带食虫植物，其种加词“类似于马兜铃”，指该猪笼草捕虫笼的形状和颜色都非常近似于马兜铃的花朵。";
+    public static final String PORTUGUESE = "A otimização é a primeira prova de que não sub-canais compatível com o tamanho do léxico.";
+    public static final String ENGLISH = "The little cat is on the carpet, and the dog sleeps in the house.";
+
+    /**
+     * Latin and CJK texts, so that the trees mix small and large alphabets.
+     */
+    public static final String[] TEXTS = {FRENCH, CHINESE, PORTUGUESE, ENGLISH};
+
+    /**
+     * Texts to be scored by the profiles learnt from {@link #TEXTS}, including unknown and too short ones.
+     */
+    public static final String[] SAMPLES = {"", "a", "马兜铃", "猪笼草的花朵", "le lexique", "une optimisation du lexique",
+            "o tamanho do léxico", "the dog", "zzz"};
+
+    private Corpus() {
+    }
+
+    public static GramTreeBuilder learn(GramTreeBuilder builder, String... texts) {
+        for (String text : texts) builder.learn(text);
+        return builder;
+    }
+
+    public static HashGramTreeBuilder learn(HashGramTreeBuilder builder, String... texts) {
+        for (String text : texts) builder.learn(text);
+        return builder;
+    }
+
+    /**
+     * @param length the number of characters
+     * @param seed   the seed of the characters
+     * @return a text of CJK characters with a gaussian distribution, which has many distinct n-grams
+     */
+    public static String generated(int length, long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) (0x4E00 + (int) Math.abs(random.nextGaussian() * 100)));
+        }
+        return text.toString();
+    }
+
+    /**
+     * @param tree a compiled tree
+     * @return the tree in the binary profile format
+     */
+    public static byte[] profileBytes(AbstractGramTree tree) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProfileFormat.write((CompiledGramTree) tree, bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Checks that two compiled trees hold the same n-grams with the same scores.
+     */
+    public static void assertSameProfile(AbstractGramTree actual, AbstractGramTree expected) throws IOException {
+        assertEquals(profileBytes(actual), profileBytes(expected));
+    }
+}
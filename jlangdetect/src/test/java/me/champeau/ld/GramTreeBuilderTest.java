@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+
+package me.champeau.ld;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import static me.champeau.ld.Corpus.SAMPLES;
+import static me.champeau.ld.Corpus.TEXTS;
+import static me.champeau.ld.Corpus.assertSameProfile;
+import static me.champeau.ld.Corpus.learn;
+import static me.champeau.ld.Corpus.profileBytes;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class GramTreeBuilderTest {
+
+    @Test
+    public void compiledScoresShouldMatchFrequencyScores() {
+        GramTreeBuilder builder = learn(new GramTreeBuilder(1, 3), TEXTS);
+        double[] expected = new double[SAMPLES.length];
+        for (int i = 0; i < SAMPLES.length; i++) {
+            expected[i] = builder.scoreText(SAMPLES[i]);
+        }
+        AbstractGramTree compiled = builder.build();
+        for (int i = 0; i < SAMPLES.length; i++) {
+            assertEquals(compiled.scoreText(SAMPLES[i]), expected[i], Math.abs(expected[i]) * CompiledGramTree.SCORE_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void compiledTreesShouldScoreIncrementally() {
+        AbstractGramTree compiled = learn(new GramTreeBuilder(1, 3), TEXTS).build();
+        for (String text : SAMPLES) {
+            int length = text.length();
+            int maxWindow = NGramIterator.maxWindow(length, 1, 3);
+            double tot = 0;
+            for (int pos = 0; pos < length; pos += 2) {
+                tot += compiled.scorePositions(text, pos, Math.min(pos + 2, length), maxWindow);
+            }
+            assertEquals(tot, compiled.scoreText(text), 1e-9);
+        }
+    }
+
+    @Test
+    public void shouldMergeShardsLikeSingleBuilder() throws IOException {
+        GramTreeBuilder single = learn(new GramTreeBuilder(1, 3), TEXTS);
+        single.setTruncationThreshold(0.5);
+        GramTreeBuilder[] shards = {new GramTreeBuilder(1, 3), new GramTreeBuilder(1, 3), new GramTreeBuilder(1, 3)};
+        for (int i = 0; i < TEXTS.length; i++) {
+            shards[i % shards.length].learn(TEXTS[i]);
+        }
+        GramTreeBuilder merged = shards[2];
+        merged.setTruncationThreshold(0.5);
+        merged.merge(shards[0]);
+        merged.merge(shards[1]);
+        assertSameProfile(merged.build(), single.build());
+    }
+
+    @Test
+    public void shouldBuildProfilesWithinBudget() throws IOException {
+        byte[] full = profileBytes(learn(new GramTreeBuilder(1, 3), TEXTS).build());
+        for (int nodes : new int[] {1, 2, 50, 333}) {
+            GramTreeBuilder builder = learn(new GramTreeBuilder(1, 3), TEXTS);
+            builder.setMaxNodeCount(nodes);
+            assertEquals(((CompiledGramTree) builder.build()).getNodeCount(), nodes);
+            // a size budget which the node count budget already fits in keeps the same nodes
+            builder = learn(new GramTreeBuilder(1, 3), TEXTS);
+            builder.setMaxNodeCount(nodes);
+            builder.setMaxProfileSize(full.length);
+            assertEquals(((CompiledGramTree) builder.build()).getNodeCount(), nodes);
+        }
+        for (int size : new int[] {66, 1000, 3000, full.length - 1, full.length}) {
+            GramTreeBuilder builder = learn(new GramTreeBuilder(1, 3), TEXTS);
+            builder.setMaxProfileSize(size);
+            byte[] bytes = profileBytes(builder.build());
+            assertTrue(bytes.length <= size && bytes.length > size - 64, size + " : " + bytes.length);
+            if (size == full.length) assertEquals(bytes, full);
+        }
+        // both budgets, the size budget being the tighter one
+        GramTreeBuilder builder = learn(new GramTreeBuilder(1, 3), TEXTS);
+        builder.setMaxNodeCount(333);
+        builder.setMaxProfileSize(1000);
+        CompiledGramTree tree = (CompiledGramTree) builder.build();
+        assertTrue(tree.getNodeCount() < 333);
+        assertTrue(profileBytes(tree).length <= 1000);
+        // prefixes shorter than the minimal n-gram size are not counted, so they cannot be ranked
+        try {
+            new GramTreeBuilder(2, 3).setMaxNodeCount(50);
+            fail("Budgets should require a minimal n-gram size of 1");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+
+package me.champeau.ld;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static me.champeau.ld.Corpus.TEXTS;
+import static me.champeau.ld.Corpus.assertSameProfile;
+import static me.champeau.ld.Corpus.learn;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class HashGramTreeBuilderTest {
+
+    @Test
+    public void shouldBuildLikeNodeBuilder() throws IOException {
+        // edge cases, and enough distinct n-grams to spill counts with the smallest memory budget
+        String[] extra = {"ab", "x", "\uffff\uffff\u0000", Corpus.generated(20000, 42)};
+        for (int min = 1; min <= 3; min++) {
+            for (double threshold : new double[] {1.0, 0.5, 0.1}) {
+                GramTreeBuilder nodes = learn(learn(new GramTreeBuilder(min, 3), TEXTS), extra);
+                HashGramTreeBuilder hash = new HashGramTreeBuilder(min, 3);
+                HashGramTreeBuilder spilled = new HashGramTreeBuilder(min, 3);
+                nodes.setTruncationThreshold(threshold);
+                hash.setTruncationThreshold(threshold);
+                spilled.setTruncationThreshold(threshold);
+                spilled.setMemoryBudget(12 << 12);
+                learn(learn(hash, TEXTS), extra);
+                learn(learn(spilled, TEXTS), extra);
+                AbstractGramTree expected = nodes.build();
+                assertSameProfile(hash.build(), expected);
+                assertSameProfile(spilled.build(), expected);
+            }
+        }
+    }
+
+    @Test
+    public void shouldTruncateSpilledVeryFrequentGrams() throws IOException {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            repeated.append(i % 7 == 0 ? "abc" : "ab");
+        }
+        String[] corpus = {repeated.toString(), Corpus.generated(20000, 7)};
+        for (double threshold : new double[] {1.0, 0.001, 0.0001}) {
+            GramTreeBuilder nodes = learn(new GramTreeBuilder(1, 3), corpus);
+            HashGramTreeBuilder spilled = new HashGramTreeBuilder(1, 3);
+            nodes.setTruncationThreshold(threshold);
+            spilled.setTruncationThreshold(threshold);
+            spilled.setMemoryBudget(12 << 12);
+            assertSameProfile(learn(spilled, corpus).build(), nodes.build());
+        }
+    }
+
+    @Test
+    public void shouldDeleteSpilledRuns() throws IOException {
+        File directory = Files.createTempDirectory("runs").toFile();
+        try {
+            String text = Corpus.generated(20000, 42);
+            HashGramTreeBuilder built = new HashGramTreeBuilder(1, 3);
+            built.setSpillDirectory(directory);
+            built.setMemoryBudget(12 << 12);
+            built.learn(text);
+            assertTrue(directory.list().length > 0);
+            built.build();
+            assertEquals(directory.list().length, 0);
+
+            HashGramTreeBuilder discarded = new HashGramTreeBuilder(1, 3);
+            discarded.setSpillDirectory(directory);
+            discarded.setMemoryBudget(12 << 12);
+            discarded.learn(text);
+            assertTrue(directory.list().length > 0);
+            discarded.discard();
+            assertEquals(directory.list().length, 0);
+        } finally {
+            directory.delete();
+        }
+    }
+}
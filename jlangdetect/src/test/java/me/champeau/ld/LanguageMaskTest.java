@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+
+package me.champeau.ld;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static me.champeau.ld.Corpus.ENGLISH;
+import static me.champeau.ld.Corpus.FRENCH;
+import static me.champeau.ld.Corpus.learn;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class LanguageMaskTest {
+
+    @Test
+    public void shouldOnlyMaskRegisteredLanguages() {
+        LangDetector detector = new LangDetector();
+        detector.register("mask-fr", learn(new GramTreeBuilder(1, 3), FRENCH).build());
+        detector.register("mask-en", learn(new GramTreeBuilder(1, 3), ENGLISH).build());
+        assertEquals(LanguageIds.nameOf(LanguageIds.find("mask-fr")), "mask-fr");
+        LanguageMask english = LanguageMask.of("mask-en");
+        assertEquals(LanguageMask.of("mask-en", "mask-fr"), LanguageMask.of(Arrays.asList("mask-fr", "mask-en")));
+        assertEquals(LanguageMask.of("mask-en", "mask-fr").toLanguages(), new HashSet<String>(Arrays.asList("mask-en", "mask-fr")));
+        assertTrue(english.contains("mask-en"));
+        assertFalse(english.contains("mask-fr"));
+        assertTrue(LanguageMask.of("mask-fr", "mask-en").intersects(english));
+        assertFalse(LanguageMask.of("mask-fr").intersects(english));
+        assertEquals(detector.detectLang("the dog", english), "mask-en");
+
+        // unknown languages are left out, and are not given an id
+        int count = LanguageIds.count();
+        assertEquals(LanguageMask.of("mask-en", "mask-unknown"), english);
+        assertEquals(LanguageMask.of("mask-unknown"), LanguageMask.of());
+        assertFalse(english.contains("mask-unknown"));
+        assertEquals(LanguageIds.find("mask-unknown"), -1);
+        assertEquals(LanguageIds.count(), count);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+
+package me.champeau.ld;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static me.champeau.ld.Corpus.SAMPLES;
+import static me.champeau.ld.Corpus.TEXTS;
+import static me.champeau.ld.Corpus.assertSameProfile;
+import static me.champeau.ld.Corpus.learn;
+import static me.champeau.ld.Corpus.profileBytes;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ProfileFormatTest {
+
+    @Test
+    public void shouldReadAndMapBinaryProfiles() throws IOException {
+        CompiledGramTree tree = (CompiledGramTree) learn(new GramTreeBuilder(1, 3), TEXTS).build();
+        byte[] bytes = profileBytes(tree);
+        AbstractGramTree read = ProfileFormat.load(new ByteArrayInputStream(bytes));
+        File file = File.createTempFile("profile", ".bin");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        out.write(bytes);
+        out.close();
+        MappedGramTree mapped = ProfileFormat.map(file);
+        assertEquals(mapped.getNodeCount(), tree.getNodeCount());
+        for (String text : SAMPLES) {
+            assertEquals(read.scoreText(text), tree.scoreText(text));
+            assertEquals(mapped.scoreText(text), tree.scoreText(text));
+        }
+    }
+
+    @Test
+    public void shouldReadProfilesByChunks() throws IOException {
+        // larger than the read buffer, so that arrays span several chunks
+        AbstractGramTree tree = learn(new GramTreeBuilder(1, 3), Corpus.generated(5000, 42)).build();
+        byte[] bytes = profileBytes(tree);
+        assertTrue(bytes.length > 8192 * 2);
+        assertSameProfile(ProfileFormat.read(new ByteArrayInputStream(bytes)), tree);
+        LangDetector detector = new LangDetector();
+        detector.register("zh", new ByteArrayInputStream(bytes));
+        assertEquals(detector.getLanguages(), Collections.singleton("zh"));
+        for (int length : new int[] {0, 39, 40, bytes.length - 1}) {
+            try {
+                ProfileFormat.read(new ByteArrayInputStream(Arrays.copyOf(bytes, length)));
+                fail("Truncated profile should not be read");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void shouldRejectCorruptedHeaders() throws IOException {
+        byte[] bytes = profileBytes(learn(new GramTreeBuilder(1, 3), TEXTS).build());
+        int nodeCount = ByteBuffer.wrap(bytes).getInt(24);
+        // node count, hashed words, table count and table size
+        int[][] corruptions = {{24, 0}, {24, Integer.MAX_VALUE}, {24, nodeCount + 64}, {28, 0}, {28, Integer.MAX_VALUE},
+                {32, -1}, {32, nodeCount + 1}, {36, -1}, {36, Integer.MAX_VALUE}, {36, Integer.MAX_VALUE / 4}};
+        File file = File.createTempFile("profile", ".bin");
+        try {
+            for (int[] corruption : corruptions) {
+                byte[] corrupted = bytes.clone();
+                ByteBuffer.wrap(corrupted).putInt(corruption[0], corruption[1]);
+                OutputStream out = new FileOutputStream(file);
+                out.write(corrupted);
+                out.close();
+                try {
+                    ProfileFormat.read(new ByteArrayInputStream(corrupted));
+                    fail("Corrupted profile should not be read : " + Arrays.toString(corruption));
+                } catch (IOException e) {
+                    // expected
+                }
+                try {
+                    ProfileFormat.map(file);
+                    fail("Corrupted profile should not be mapped : " + Arrays.toString(corruption));
+                } catch (IOException e) {
+                    // expected
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldUpdateSavedCounts() throws IOException {
+        GramTreeBuilder single = learn(new GramTreeBuilder(1, 3), TEXTS);
+        GramTreeBuilder first = learn(new GramTreeBuilder(1, 3), TEXTS[0], TEXTS[1]);
+        GramTreeBuilder second = learn(new GramTreeBuilder(1, 3), TEXTS[2], TEXTS[3]);
+        ByteArrayOutputStream firstCounts = new ByteArrayOutputStream();
+        ProfileFormat.writeCounts(first, firstCounts);
+        ByteArrayOutputStream secondCounts = new ByteArrayOutputStream();
+        ProfileFormat.writeCounts(second, secondCounts);
+
+        // learning further texts into reopened counts
+        GramTreeBuilder updated = learn(ProfileFormat.readCounts(new ByteArrayInputStream(firstCounts.toByteArray())),
+                TEXTS[2], TEXTS[3]);
+        // merging two count profiles
+        GramTreeBuilder merged = ProfileFormat.readCounts(new ByteArrayInputStream(firstCounts.toByteArray()));
+        merged.merge(ProfileFormat.readCounts(new ByteArrayInputStream(secondCounts.toByteArray())));
+
+        single.setTruncationThreshold(0.5);
+        updated.setTruncationThreshold(0.5);
+        merged.setTruncationThreshold(0.5);
+        AbstractGramTree expected = single.build();
+        assertSameProfile(updated.build(), expected);
+        assertSameProfile(merged.build(), expected);
+        try {
+            byte[] truncated = Arrays.copyOf(firstCounts.toByteArray(), firstCounts.size() - 1);
+            ProfileFormat.readCounts(new ByteArrayInputStream(truncated));
+            fail("Truncated counts should not be read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+
+package me.champeau.ld.learn.util;
+
+import me.champeau.ld.AbstractGramTree;
+import me.champeau.ld.Corpus;
+import me.champeau.ld.GramTreeBuilder;
+import me.champeau.ld.HashGramTreeBuilder;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+import static me.champeau.ld.Corpus.assertSameProfile;
+
+public class CorpusReaderTest {
+
+    @Test
+    public void shouldStreamCorpusFilesLikeReadLines() throws IOException {
+        // long enough for lines and multi-byte characters to span buffer fills
+        StringBuilder corpus = new StringBuilder();
+        String[] lines = {"<CHAPTER ID=1>", Corpus.FRENCH, Corpus.CHINESE, "", "<SPEAKER ID=2 NAME=\"x\">", Corpus.ENGLISH};
+        String[] terminators = {"\n", "\r\n", "\r"};
+        for (int i = 0; i < 3000; i++) {
+            corpus.append(lines[i % lines.length]).append(terminators[i % terminators.length]);
+        }
+        corpus.append("no terminator");
+        File file = File.createTempFile("corpus", ".txt");
+        try {
+            OutputStream out = new FileOutputStream(file);
+            out.write(corpus.toString().getBytes("UTF-8"));
+            out.close();
+            GramTreeBuilder expectedText = new GramTreeBuilder(1, 3);
+            GramTreeBuilder expectedLines = new GramTreeBuilder(1, 3);
+            StringBuilder filtered = new StringBuilder();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                expectedLines.learn(line);
+                if (!line.startsWith("<")) filtered.append(line).append('\n');
+            }
+            reader.close();
+            expectedText.learn(filtered);
+
+            GramTreeBuilder text = new GramTreeBuilder(1, 3);
+            HashGramTreeBuilder hashText = new HashGramTreeBuilder(1, 3);
+            final GramTreeBuilder byLine = new GramTreeBuilder(1, 3);
+            CorpusReader xmlReader = new CorpusReader(Charset.forName("UTF-8"), CorpusReader.SKIP_XML_LINES);
+            Writer writer = text.newTextWriter();
+            xmlReader.read(file, writer);
+            writer.close();
+            writer = hashText.newTextWriter();
+            xmlReader.read(file, writer);
+            writer.close();
+            new CorpusReader(Charset.forName("UTF-8"), CorpusReader.ALL_LINES).readLines(file, new CorpusReader.LineHandler() {
+                public void line(CharBuffer line) {
+                    byLine.learn(line);
+                }
+            });
+            AbstractGramTree expected = expectedText.build();
+            assertSameProfile(text.build(), expected);
+            assertSameProfile(hashText.build(), expected);
+            assertSameProfile(byLine.build(), expectedLines.build());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+
+
+package me.champeau.ld.learn.util;
+
+import me.champeau.ld.CompiledGramTree;
+import me.champeau.ld.Corpus;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static me.champeau.ld.Corpus.assertSameProfile;
+import static me.champeau.ld.Corpus.profileBytes;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ShardedLearningTest {
+
+    @Test
+    public void backendsShouldLearnSameProfiles() throws IOException {
+        File srcDir = Files.createTempDirectory("corpus").toFile();
+        File dstDir = Files.createTempDirectory("profiles").toFile();
+        try {
+            String[] langs = {"fr", "zh"};
+            write(new File(srcDir, "fr"), Corpus.FRENCH, Corpus.PORTUGUESE, Corpus.ENGLISH);
+            write(new File(srcDir, "zh"), Corpus.CHINESE, Corpus.generated(20000, 42));
+            ShardedLearning nodes = newLearning();
+            Map<String, CompiledGramTree> expected = nodes.readCorpus(srcDir, dstDir, langs, 2);
+            ShardedLearning hash = newLearning();
+            assertEquals(hash.parseOptions(new String[] {"--hash", "--memory-budget", "1", srcDir.getPath()}), 3);
+            Map<String, CompiledGramTree> actual = hash.readCorpus(srcDir, dstDir, langs, 3);
+            assertEquals(actual.keySet(), expected.keySet());
+            for (String lang : langs) {
+                assertSameProfile(actual.get(lang), expected.get(lang));
+            }
+            hash.setCountsDirectory(dstDir);
+            try {
+                hash.readCorpus(srcDir, dstDir, langs, 1);
+                fail("Counts should only be kept by the node backend");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            delete(srcDir);
+            delete(dstDir);
+        }
+    }
+
+    @Test
+    public void shouldBoundProfilesWithNodeBackend() throws IOException {
+        File srcDir = Files.createTempDirectory("corpus").toFile();
+        File dstDir = Files.createTempDirectory("profiles").toFile();
+        try {
+            String[] langs = {"fr", "zh"};
+            write(new File(srcDir, "fr"), Corpus.FRENCH, Corpus.PORTUGUESE, Corpus.ENGLISH);
+            write(new File(srcDir, "zh"), Corpus.CHINESE, Corpus.generated(2000, 42));
+            ShardedLearning bounded = newLearning();
+            assertEquals(bounded.parseOptions(new String[] {"--max-nodes", "50", "--max-size", "2"}), 4);
+            Map<String, CompiledGramTree> trees = bounded.readCorpus(srcDir, dstDir, langs, 2);
+            assertEquals(new ArrayList<String>(trees.keySet()), Arrays.asList(langs));
+            for (CompiledGramTree tree : trees.values()) {
+                assertEquals(tree.getNodeCount(), 50);
+                assertTrue(profileBytes(tree).length <= 2048);
+            }
+            bounded.setBackend(ShardedLearning.Backend.HASH);
+            try {
+                bounded.readCorpus(srcDir, dstDir, langs, 1);
+                fail("Profiles should only be bounded by the node backend");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            delete(srcDir);
+            delete(dstDir);
+        }
+    }
+
+    private static ShardedLearning newLearning() {
+        return new ShardedLearning(1, 3) {
+            private final CorpusReader reader = new CorpusReader(Charset.forName("UTF-8"), CorpusReader.ALL_LINES);
+
+            @Override
+            protected double getTruncationThreshold(String lang) {
+                return 0.5;
+            }
+
+            @Override
+            protected void learn(final Shard shard, File file) throws IOException {
+                synchronized (reader) {
+                    reader.readLines(file, new CorpusReader.LineHandler() {
+                        public void line(CharBuffer line) {
+                            shard.learn(line);
+                        }
+                    });
+                }
+            }
+        };
+    }
+
+    private static void write(File dir, String... files) throws IOException {
+        dir.mkdirs();
+        for (int i = 0; i < files.length; i++) {
+            OutputStream out = new FileOutputStream(new File(dir, i + ".txt"));
+            out.write(files[i].getBytes("UTF-8"));
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        file.delete();
+    }
+}
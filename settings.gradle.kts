@@ -5,6 +5,7 @@ enableFeaturePreview("VERSION_CATALOGS")
 include(":jlangdetect-europarl")
 include(":jlangdetect")
 include(":jlangdetect-extra")
+include(":jlangdetect-benchmarks")
 
 dependencyResolutionManagement {
     repositories {